@@ -0,0 +1,36 @@
+package mpp;
+
+import java.util.Random;
+
+/**
+ * Randomized exponential backoff, in busy-wait iterations
+ */
+public class Backoff {
+	final int minDelay, maxDelay;
+	int limit;
+	final Random random;
+
+	/**
+	 * constructor
+	 * @param min
+	 * 				Initial backoff limit (iterations)
+	 * @param max
+	 * 				Maximal backoff limit (iterations)
+	 */
+	public Backoff(int min, int max) {
+		minDelay = min;
+		maxDelay = max;
+		limit = minDelay;
+		random = new Random();
+	}
+
+	/**
+	 * waits a random number of iterations up to the current limit, and doubles the limit
+	 */
+	public void backoff() {
+		int delay = random.nextInt(limit) + 1;
+		limit = Math.min(maxDelay, 2*limit);
+		for (int i=0; i<delay; i++)
+			Thread.onSpinWait();
+	}
+}
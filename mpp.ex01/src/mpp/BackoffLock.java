@@ -0,0 +1,33 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test-and-test-and-set lock that backs off exponentially after every failed swap
+ */
+public class BackoffLock extends SpinLock {
+	private static final int MIN_DELAY = 16;
+	private static final int MAX_DELAY = 4096;
+
+	private AtomicBoolean state = new AtomicBoolean(false);
+
+	public void lock() {
+		Backoff backoff = null;
+		while (true) {
+			while (state.get()) {}
+			if (!state.getAndSet(true))
+				return;
+			// only allocate a backoff once the lock is found contended
+			if (backoff == null) backoff = new Backoff(MIN_DELAY, MAX_DELAY);
+			backoff.backoff();
+		}
+	}
+
+	public boolean tryLock() {
+		return !state.get() && !state.getAndSet(true);
+	}
+
+	public void unlock() {
+		state.set(false);
+	}
+}
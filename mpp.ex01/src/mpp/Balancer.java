@@ -0,0 +1,21 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Two-output balancer: tokens leave alternately on wire 0 and wire 1
+ */
+public class Balancer {
+	// tokens that went through so far, its parity is the toggle
+	private AtomicInteger count = new AtomicInteger(0);
+
+	/**
+	 * @param input
+	 * 				The input wire (the output does not depend on it)
+	 * @return
+	 * 				The output wire, 0 or 1
+	 */
+	public int traverse(int input){
+		return count.getAndIncrement() & 1;
+	}
+}
@@ -0,0 +1,109 @@
+package mpp;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import mpp.Main.*;
+
+/**
+ * Counter in which every thread batches its increments locally, and adds them to the shared value
+ * once it holds K of them, or once T nanosecs have passed since its last flush (the clock is only
+ * read every CLOCK_CHECK increments).
+ *
+ * approximate() reads the shared value only, so it never exceeds the exact count, and falls behind
+ * it by less than P*K, P being the number of threads that incremented the counter (each holds back
+ * at most K-1 increments). A thread that keeps incrementing does not hold back an increment for
+ * much longer than T; a thread that stopped may hold back up to K-1 until sumAtQuiescence().
+ * sumAtQuiescence() adds the increments still held back by all threads, and is exact once all the
+ * incrementing threads are done (e.g. joined).
+ */
+public class BatchingCounter extends Counter{
+	// increments between two reads of the clock
+	private static final int CLOCK_CHECK = 16;
+
+	// opaque access to a cell's pending increments, so that staleness() can watch them for free
+	private static final VarHandle PENDING;
+	static {
+		try {
+			PENDING = MethodHandles.lookup().findVarHandle(Cell.class, "pending", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private AtomicLong shared = new AtomicLong(0);
+	private int batchSize;
+	private long flushInterval;
+	private ConcurrentLinkedQueue<Cell> cells = new ConcurrentLinkedQueue<Cell>();
+	private ThreadLocal<Cell> myCell;
+
+	/**
+	 * constructor
+	 * @param batchSize
+	 * 				K, the most increments a thread holds back
+	 * @param flushInterval
+	 * 				T, the most nanosecs a thread waits between flushes while incrementing, 0 for no bound
+	 */
+	public BatchingCounter(int batchSize, long flushInterval){
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		myCell = new ThreadLocal<Cell>() {
+			protected Cell initialValue() {
+				Cell cell = new Cell();
+				cells.add(cell);
+				return cell;
+			}
+		};
+	}
+
+	public void increment(){
+		Cell cell = myCell.get();
+		long pending = cell.pending + 1;
+		if (pending >= batchSize ||
+				(flushInterval > 0 && pending % CLOCK_CHECK == 0 && System.nanoTime() - cell.lastFlush >= flushInterval)){
+			// flush
+			shared.getAndAdd(pending);
+			pending = 0;
+			if (flushInterval > 0) cell.lastFlush = System.nanoTime();
+		}
+		PENDING.setOpaque(cell, pending);
+	}
+
+	/**
+	 * @return	the flushed increments, behind the exact count by less than P*K
+	 */
+	public long approximate(){
+		return shared.get();
+	}
+
+	/**
+	 * @return	the exact count, provided no increment is in progress
+	 */
+	public long sumAtQuiescence(){
+		return shared.get() + staleness();
+	}
+
+	public long sum(){
+		return sumAtQuiescence();
+	}
+
+	/**
+	 * @return	the increments currently held back by all threads, that is how far approximate() is behind
+	 * 			(a snapshot only while increments are in progress)
+	 */
+	public long staleness(){
+		long pending = 0;
+		for (Cell cell: cells)
+			pending += (long)PENDING.getOpaque(cell);
+		return pending;
+	}
+
+	/**
+	 * per-thread batch
+	 */
+	private static class Cell{
+		long pending = 0;
+		long lastFlush = System.nanoTime();
+	}
+}
@@ -0,0 +1,36 @@
+package mpp;
+
+/**
+ * Bitonic counting network of a given width: two half-width bitonic networks feeding a merger
+ */
+public class Bitonic {
+	private Bitonic[] half;		// the two sub-networks, for width > 2
+	private Merger merger;		// final merger layer
+	private final int width;
+
+	/**
+	 * constructor
+	 * @param width
+	 * 				Network width, a power of 2 of at least 2
+	 */
+	public Bitonic(int width){
+		this.width = width;
+		merger = new Merger(width);
+		if (width > 2)
+			half = new Bitonic[]{new Bitonic(width/2), new Bitonic(width/2)};
+	}
+
+	/**
+	 * @param input
+	 * 				The input wire
+	 * @return
+	 * 				The output wire
+	 */
+	public int traverse(int input){
+		int output = 0;
+		int subnet = input/(width/2);
+		if (width > 2)
+			output = half[subnet].traverse(input - subnet*(width/2));
+		return merger.traverse(output + subnet*(width/2));
+	}
+}
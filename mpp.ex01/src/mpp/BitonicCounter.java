@@ -0,0 +1,57 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import mpp.Main.*;
+
+/**
+ * Counter built of a bitonic counting network feeding a local counter on every output wire.
+ * The i-th token to leave wire w gets the value w + i*width, so values are distinct, and by the
+ * step property of the network the values handed out at quiescence are exactly 0..count-1.
+ */
+public class BitonicCounter extends TicketCounter{
+	// ints per local counter: 32 ints = 128 bytes, so every wire counter has its own cache line
+	private static final int PAD = 32;
+
+	private Bitonic network;
+	private AtomicIntegerArray counters;
+	private int width;
+
+	/**
+	 * constructor
+	 * @param width
+	 * 				Network width, a power of 2 of at least 2
+	 */
+	public BitonicCounter(int width){
+		this.width = width;
+		network = new Bitonic(width);
+		counters = new AtomicIntegerArray(width*PAD);
+	}
+
+	public int getAndIncrement(){
+		// threads enter on the input wire of their index
+		int wire = network.traverse(ThreadID.get() % width);
+		return wire + counters.getAndIncrement(wire*PAD)*width;
+	}
+
+	public long sum(){
+		long sum = 0;
+		for (int wire=0; wire<width; wire++)
+			sum += counters.get(wire*PAD);
+		return sum;
+	}
+
+	/**
+	 * checks the step property over the tokens that left every output wire:
+	 * for any wires i < j, 0 <= y(i) - y(j) <= 1.
+	 * meaningful at quiescence only.
+	 */
+	public boolean hasStepProperty(){
+		for (int i=0; i<width; i++){
+			for (int j=i+1; j<width; j++){
+				int diff = counters.get(i*PAD) - counters.get(j*PAD);
+				if (diff < 0 || diff > 1) return false;
+			}
+		}
+		return true;
+	}
+}
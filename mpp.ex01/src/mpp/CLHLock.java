@@ -0,0 +1,67 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CLH queue lock: each thread spins on the node of its predecessor in an implicit queue,
+ * and recycles the predecessor's node on release
+ */
+public class CLHLock extends SpinLock {
+	AtomicReference<QNode> tail;
+	ThreadLocal<QNode> myPred;
+	ThreadLocal<QNode> myNode;
+
+	/**
+	 * default constructor
+	 */
+	public CLHLock() {
+		tail = new AtomicReference<QNode>(new QNode());
+		myNode = new ThreadLocal<QNode>() {
+			protected QNode initialValue() {
+				return new QNode();
+			}
+		};
+		myPred = new ThreadLocal<QNode>() {
+			protected QNode initialValue() {
+				return null;
+			}
+		};
+	}
+
+	public void lock() {
+		QNode qnode = myNode.get();
+		qnode.locked = true;
+		QNode pred = tail.getAndSet(qnode);
+		myPred.set(pred);
+		while (pred.locked) {}
+	}
+
+	public boolean tryLock() {
+		QNode qnode = myNode.get();
+		qnode.locked = true;
+		QNode pred = tail.get();
+		// enqueue only behind a released node, so that there is nothing to wait for
+		if (pred.locked || !tail.compareAndSet(pred, qnode)) {
+			qnode.locked = false;
+			return false;
+		}
+		myPred.set(pred);
+		// the released node may have been recycled and enqueued again just before the swap,
+		// in which case I am queued right behind its new owner and wait for it alone
+		while (pred.locked) {}
+		return true;
+	}
+
+	public void unlock() {
+		QNode qnode = myNode.get();
+		qnode.locked = false;
+		myNode.set(myPred.get());
+	}
+
+	/**
+	 * Class QNode, locked while its thread holds or waits for the lock
+	 */
+	static class QNode {
+		volatile boolean locked = false;
+	}
+}
@@ -0,0 +1,192 @@
+package mpp;
+
+import java.util.Stack;
+import mpp.Main.*;
+
+/**
+ * Software combining tree counter.
+ * Threads climb from their leaf towards the root, and two threads meeting at a node combine
+ * their increments, so that only one of them goes on up with the sum of both. The value
+ * obtained at the root is then distributed back down, giving every thread a distinct value.
+ */
+public class CombiningTreeCounter extends TicketCounter{
+	private Node root;
+	private Node[] leaf;
+	private int width;
+
+	/**
+	 * constructor
+	 * @param width
+	 * 				Number of threads the tree is built for (two per leaf), a power of 2 of at least 2.
+	 * 				Threads beyond the width share leaves and wait for their turn there.
+	 */
+	public CombiningTreeCounter(int width){
+		this.width = width;
+		Node[] nodes = new Node[width-1];
+		nodes[0] = new Node();
+		for (int i=1; i<nodes.length; i++)
+			nodes[i] = new Node(nodes[(i-1)/2]);
+		root = nodes[0];
+		leaf = new Node[(width+1)/2];
+		for (int i=0; i<leaf.length; i++)
+			leaf[i] = nodes[nodes.length-i-1];
+	}
+
+	public int getAndIncrement(){
+		Stack<Node> stack = new Stack<Node>();
+		Node myLeaf = leaf[(ThreadID.get() % width)/2];
+		Node node = myLeaf;
+
+		// precombining phase: mark the path up to the node where I stop
+		while (node.precombine())
+			node = node.parent;
+		Node stop = node;
+
+		// combining phase: collect the increments of the threads that stopped on my path
+		node = myLeaf;
+		int combined = 1;
+		while (node != stop){
+			combined = node.combine(combined);
+			stack.push(node);
+			node = node.parent;
+		}
+
+		// operation phase
+		int prior = stop.op(combined);
+
+		// distribution phase
+		while (!stack.empty()){
+			node = stack.pop();
+			node.distribute(prior);
+		}
+		return prior;
+	}
+
+	public long sum(){
+		return root.get();
+	}
+
+	/**
+	 * combining tree node
+	 */
+	private static class Node{
+		enum CStatus {IDLE, FIRST, SECOND, RESULT, ROOT};
+
+		boolean locked;
+		CStatus cStatus;
+		int firstValue, secondValue;
+		int result;
+		Node parent;
+
+		/**
+		 * constructor for the root
+		 */
+		public Node(){
+			cStatus = CStatus.ROOT;
+			locked = false;
+		}
+
+		/**
+		 * constructor for any other node
+		 */
+		public Node(Node parent){
+			this.parent = parent;
+			cStatus = CStatus.IDLE;
+			locked = false;
+		}
+
+		/**
+		 * @return	true if I am the first to get here and should go on up,
+		 * 			false if I should stop here
+		 */
+		synchronized boolean precombine(){
+			// a third thread on a shared leaf waits until the previous two are done with it
+			while (locked || cStatus == CStatus.SECOND || cStatus == CStatus.RESULT) waitHere();
+			switch (cStatus){
+			case IDLE:
+				cStatus = CStatus.FIRST;
+				return true;
+			case FIRST:
+				locked = true;
+				cStatus = CStatus.SECOND;
+				return false;
+			case ROOT:
+				return false;
+			default:
+				throw new IllegalStateException("unexpected node state "+cStatus);
+			}
+		}
+
+		/**
+		 * locks the node and adds the value of the second thread, if any, to mine
+		 */
+		synchronized int combine(int combined){
+			while (locked) waitHere();
+			locked = true;
+			firstValue = combined;
+			switch (cStatus){
+			case FIRST:
+				return firstValue;
+			case SECOND:
+				return firstValue + secondValue;
+			default:
+				throw new IllegalStateException("unexpected node state "+cStatus);
+			}
+		}
+
+		/**
+		 * applies the combined increment at the root, or hands it to the first thread and waits for the result
+		 */
+		synchronized int op(int combined){
+			switch (cStatus){
+			case ROOT:
+				int prior = result;
+				result += combined;
+				return prior;
+			case SECOND:
+				secondValue = combined;
+				locked = false;
+				notifyAll();
+				while (cStatus != CStatus.RESULT) waitHere();
+				locked = false;
+				notifyAll();
+				cStatus = CStatus.IDLE;
+				return result;
+			default:
+				throw new IllegalStateException("unexpected node state "+cStatus);
+			}
+		}
+
+		/**
+		 * passes the result down to the second thread, if any, and unlocks the node
+		 */
+		synchronized void distribute(int prior){
+			switch (cStatus){
+			case FIRST:
+				cStatus = CStatus.IDLE;
+				locked = false;
+				break;
+			case SECOND:
+				result = prior + firstValue;
+				cStatus = CStatus.RESULT;
+				break;
+			default:
+				throw new IllegalStateException("unexpected node state "+cStatus);
+			}
+			notifyAll();
+		}
+
+		/**
+		 * @return	the value accumulated at the root
+		 */
+		synchronized int get(){
+			return result;
+		}
+
+		private void waitHere(){
+			try {
+				wait();
+			} catch (InterruptedException e) {}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package mpp;
+
+import java.util.concurrent.locks.Lock;
+import mpp.Main.*;
+
+/**
+ * Shared counter protected by a single lock, exactly as in Ex1q2
+ */
+public class LockCounter extends Counter{
+	private Lock counterLock;
+	private int sharedCounter = 0;
+
+	/**
+	 * constructor
+	 * @param counterLock
+	 * 				The lock protecting the shared counter
+	 */
+	public LockCounter(Lock counterLock){
+		this.counterLock = counterLock;
+	}
+
+	public void increment(){
+		// lock
+		counterLock.lock();
+
+		// critical section
+		int tmp = sharedCounter;
+		tmp++;
+		sharedCounter = tmp;
+
+		// unlock
+		counterLock.unlock();
+	}
+
+	public long sum(){
+		counterLock.lock();
+		int value = sharedCounter;
+		counterLock.unlock();
+		return value;
+	}
+}
@@ -0,0 +1,62 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MCS queue lock: each thread spins on a flag in its own node, which its predecessor
+ * clears on release
+ */
+public class MCSLock extends SpinLock {
+	AtomicReference<QNode> tail;
+	ThreadLocal<QNode> myNode;
+
+	/**
+	 * default constructor
+	 */
+	public MCSLock() {
+		tail = new AtomicReference<QNode>(null);
+		myNode = new ThreadLocal<QNode>() {
+			protected QNode initialValue() {
+				return new QNode();
+			}
+		};
+	}
+
+	public void lock() {
+		QNode qnode = myNode.get();
+		qnode.next = null;
+		QNode pred = tail.getAndSet(qnode);
+		if (pred != null) {
+			qnode.locked = true;
+			pred.next = qnode;
+			// wait until predecessor gives up the lock
+			while (qnode.locked) {}
+		}
+	}
+
+	public boolean tryLock() {
+		QNode qnode = myNode.get();
+		qnode.next = null;
+		// only take the lock when there is no queue at all
+		return tail.compareAndSet(null, qnode);
+	}
+
+	public void unlock() {
+		QNode qnode = myNode.get();
+		if (qnode.next == null) {
+			if (tail.compareAndSet(qnode, null))
+				return;
+			// wait until successor fills in its next field
+			while (qnode.next == null) {}
+		}
+		qnode.next.locked = false;
+	}
+
+	/**
+	 * Class QNode, with the flag its thread spins on and a pointer to the successor
+	 */
+	static class QNode {
+		volatile boolean locked = false;
+		volatile QNode next = null;
+	}
+}
@@ -0,0 +1,384 @@
+package mpp;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Main class for benchmarking shared counters against the lock-based counter of Ex1q2
+ */
+public class Main {
+	// initialize parameters
+	private static int[] numOfThreadsArray = {1, 2, 4, 8, 16, 64, 256, 1023};	// thread counts to sweep
+	private static int numOfRuns = 3;											// number of runs to average
+	private static int N = Ex1q2.N;												// increments per thread
+	private static Counter testCounter;											// counter under test
+	private static int[] treeThreadCounts = {64, 256, 1023};					// thread counts for the combining tree
+	private static int maxTreeWidth = 1024;										// widest combining tree to build
+	private static int[] networkWidths = {2, 4, 8, 16, 32, 64};					// counting network widths
+	private static int numOfNetworkThreads = 64;								// threads for the counting networks
+	private static int maxTasks = 1<<20;										// most tasks in the tasks mode
+	private static int incrementsPerTask = 100;									// increments per (short-lived) task
+	private static boolean virtualThreads = Runtime.version().feature() >= 21;	// run tasks on virtual threads
+	private static String[] taskCounterNames = {"Ex1q2", "sharded", "tas", "ttas", "backoff", "clh", "mcs"};
+	private static int[] batchSizes = {1, 4, 16, 64, 256, 1024, 4096};			// batching counter batch sizes
+	private static long flushInterval = 1000000;								// batching counter flush bound (nanosecs)
+	private static long samplingInterval = 100000;								// staleness sampling interval (nanosecs)
+	private static AtomicIntegerArray seen;										// values handed out, when checked
+	private static String[] lockNames = {"Ex1q2", "tas", "ttas", "backoff", "clh", "mcs"};	// pluggable locks
+
+	/**
+	 * main for testing
+	 * @param args
+	 * 				benchmark mode and its arguments
+	 */
+	public static void main(String[] args) {
+		// check input
+		if (args.length < 1){
+			printUsage();
+			System.exit(-1);
+		}
+		String mode = args[0];
+
+		if (mode.equals("sharded")){
+			printHeader();
+			for (int n: numOfThreadsArray){
+				runCounter("Ex1q2", n);
+				runCounter("sharded", n);
+			}
+		} else if (mode.equals("locks") && args.length >= 2){
+			// the lock to use, or all of them
+			String[] locks = args[1].equals("all") ? lockNames : new String[]{args[1]};
+			int[] threadCounts = parseThreadCounts(args, 2, coreCounts());
+			printHeader();
+			for (int n: threadCounts){
+				for (String lock: locks)
+					runCounter(lock, n);
+			}
+		} else if (mode.equals("tree")){
+			int[] threadCounts = parseThreadCounts(args, 1, treeThreadCounts);
+			printHeader();
+			for (int n: threadCounts){
+				runCounter("Ex1q2", n);
+				runCounter("tree", n);
+			}
+			checkDistinct("tree", threadCounts[0]);
+		} else if (mode.equals("network")){
+			int n = parseThreadCounts(args, 1, new int[]{numOfNetworkThreads})[0];
+			printHeader();
+			runCounter("Ex1q2", n);
+			for (int width: networkWidths){
+				runCounter("bitonic"+width, n);
+				System.out.println("\t\tstep property: "+
+						(((BitonicCounter)testCounter).hasStepProperty() ? "OK" : "FAILED"));
+			}
+			checkDistinct("bitonic"+networkWidths[networkWidths.length-1], n);
+		} else if (mode.equals("batch")){
+			int n = parseThreadCounts(args, 1, new int[]{Runtime.getRuntime().availableProcessors()})[0];
+			System.out.println("Running "+n+" threads, flushing every K increments or "+flushInterval+" nanosecs:");
+			System.out.println("K\t#threads\trunning-time (nanosecs)\tns/increment\tincrements/msec\tavg staleness\tmax staleness\tbound P*(K-1)\tcounter value");
+			System.out.println("=\t========\t=======================\t============\t===============\t=============\t=============\t=============\t=============");
+			for (int batchSize: batchSizes)
+				runBatching(batchSize, n);
+		} else if (mode.equals("tasks") && args.length >= 2){
+			int numOfTasks = Integer.valueOf(args[1]);
+			if (numOfTasks <= 0 || maxTasks < numOfTasks){
+				System.err.println("number of tasks must be positive and at most "+maxTasks);
+				System.exit(-1);
+			}
+			String[] counters = (args.length > 2) ? Arrays.copyOfRange(args, 2, args.length) : taskCounterNames;
+			System.out.println("Running "+numOfTasks+" tasks of "+incrementsPerTask+" increments each on "+
+					(virtualThreads ? "virtual threads" : "a pool of "+Runtime.getRuntime().availableProcessors()+" threads")+":");
+			System.out.println("counter\t\t#tasks\t\twall time (nanosecs)\tns/increment\tincrements/msec\ttasks/sec\tcounter value");
+			System.out.println("=======\t\t======\t\t====================\t============\t===============\t=========\t=============");
+			for (String counter: counters)
+				runTasks(counter, numOfTasks);
+		} else {
+			printUsage();
+			System.exit(-1);
+		}
+		System.out.println("");
+	}
+
+	/**
+	 * prints the usage message
+	 */
+	private static void printUsage(){
+		System.err.println("usage: Main <mode> [arguments]");
+		System.err.println("modes:");
+		System.err.println("  sharded\t\t\t\tcompare the striped ShardedCounter against Ex1q2");
+		System.err.println("  locks <lock|all> [#threads...]\tcompare the counter of Ex1q2 under each lock,");
+		System.err.println("  \t\t\t\t\tlocks: Ex1q2 (ReentrantLock), tas, ttas, backoff, clh, mcs;");
+		System.err.println("  \t\t\t\t\tthread counts default to powers of 2 up to the number of cores");
+		System.err.println("  tree [#threads...]\t\t\tcompare the CombiningTreeCounter against Ex1q2 (64, 256, 1023 threads)");
+		System.err.println("  batch [#threads]\t\t\tthroughput versus staleness of the BatchingCounter per batch size K");
+		System.err.println("  tasks <#tasks> [counters...]\t\trun up to 2^20 short tasks over each counter on virtual threads,");
+		System.err.println("  \t\t\t\t\tor on a pool of a thread per core where the JVM has none");
+		System.err.println("  network [#threads]\t\t\tcompare BitonicCounter of widths 2..64 against Ex1q2 (64 threads)");
+	}
+
+	/**
+	 * parses the thread counts given from args[from] on, or returns the given defaults if there are none
+	 */
+	private static int[] parseThreadCounts(String[] args, int from, int[] defaults){
+		if (args.length <= from) return defaults;
+		int[] threadCounts = new int[args.length-from];
+		for (int i=from; i<args.length; i++){
+			threadCounts[i-from] = Integer.valueOf(args[i]);
+			if (threadCounts[i-from] <= 0){
+				System.err.println("number of threads must be positive");
+				System.exit(-1);
+			}
+		}
+		return threadCounts;
+	}
+
+	/**
+	 * @return	powers of 2 up to the number of available cores (and the number of cores itself)
+	 */
+	private static int[] coreCounts(){
+		int cores = Runtime.getRuntime().availableProcessors();
+		int size = 0;
+		for (int n=1; n<cores; n*=2) size++;
+		int[] counts = new int[size+1];
+		for (int i=0, n=1; i<size; i++, n*=2) counts[i] = n;
+		counts[size] = cores;
+		return counts;
+	}
+
+	/**
+	 * prints the results table header
+	 */
+	private static void printHeader(){
+		System.out.println("counter\t\t#threads\trunning-time (nanosecs)\tns/increment\tincrements/msec\tcounter value");
+		System.out.println("=======\t\t========\t=======================\t============\t===============\t=============");
+	}
+
+	/**
+	 * creates a new counter by its name, for n threads
+	 */
+	private static Counter newCounter(String name, int n){
+		if (name.equals("Ex1q2")) return new LockCounter(new ReentrantLock());
+		else if (name.equals("sharded")) return new ShardedCounter();
+		else if (name.startsWith("batch")) return new BatchingCounter(Integer.valueOf(name.substring("batch".length())), flushInterval);
+		else if (name.equals("tree")) return new CombiningTreeCounter(treeWidth(n));
+		else if (name.startsWith("bitonic")) return new BitonicCounter(Integer.valueOf(name.substring("bitonic".length())));
+		else if (name.equals("tas")) return new LockCounter(new TASLock());
+		else if (name.equals("ttas")) return new LockCounter(new TTASLock());
+		else if (name.equals("backoff")) return new LockCounter(new BackoffLock());
+		else if (name.equals("clh")) return new LockCounter(new CLHLock());
+		else if (name.equals("mcs")) return new LockCounter(new MCSLock());
+		else throw new IllegalArgumentException("unknown counter: "+name);
+	}
+
+	/**
+	 * @return	the combining tree width for n threads: the next power of 2, at most maxTreeWidth
+	 */
+	private static int treeWidth(int n){
+		int width = 2;
+		while (width < n && width < maxTreeWidth) width <<= 1;
+		return width;
+	}
+
+	/**
+	 * runs the given counter with n threads numOfRuns times and prints the average results
+	 */
+	private static void runCounter(String name, int n){
+		long avrTime = 0;
+		long value = 0;
+		boolean correct = true;
+		for (int run=0; run<numOfRuns; run++){
+			testCounter = newCounter(name, n);
+			avrTime += runThreads(n)/numOfRuns;
+			value = testCounter.sum();
+			if (value != (long)n*N) correct = false;
+		}
+		System.out.println(name+(name.length() < 8 ? "\t\t" : "\t")+n+"\t\t"+avrTime+"\t\t"+(avrTime/((long)n*N))+"\t\t"+
+				((long)n*N*1000000/avrTime)+"\t\t"+value+(correct?"":" (WRONG, expected "+((long)n*N)+")"));
+	}
+
+	/**
+	 * runs a BatchingCounter of the given batch size with n threads numOfRuns times, sampling how far its
+	 * approximate value is behind while running, and prints the average results
+	 */
+	private static void runBatching(int batchSize, int n){
+		long avrTime = 0;
+		long value = 0;
+		long samples = 0, totalStaleness = 0, maxStaleness = 0;
+		boolean correct = true;
+		for (int run=0; run<numOfRuns; run++){
+			BatchingCounter counter = new BatchingCounter(batchSize, flushInterval);
+			testCounter = counter;
+			StalenessSampler sampler = new StalenessSampler(counter);
+			sampler.start();
+			avrTime += runThreads(n)/numOfRuns;
+			sampler.done = true;
+			try{
+				sampler.join();
+			} catch (InterruptedException ie) {};
+			samples += sampler.samples;
+			totalStaleness += sampler.totalStaleness;
+			maxStaleness = Math.max(maxStaleness, sampler.maxStaleness);
+			value = counter.sumAtQuiescence();
+			if (value != (long)n*N) correct = false;
+		}
+		System.out.println(batchSize+"\t"+n+"\t\t"+avrTime+"\t\t"+(avrTime/((long)n*N))+"\t\t"+
+				((long)n*N*1000000/avrTime)+"\t\t"+(samples == 0 ? 0 : totalStaleness/samples)+"\t\t"+maxStaleness+"\t\t"+
+				((long)n*(batchSize-1))+"\t\t"+value+(correct?"":" (WRONG, expected "+((long)n*N)+")"));
+	}
+
+	/**
+	 * runs numOfTasks tasks over the given counter numOfRuns times and prints the average results
+	 */
+	private static void runTasks(String name, int numOfTasks){
+		long avrTime = 0;
+		long value = 0;
+		long total = (long)numOfTasks*incrementsPerTask;
+		boolean correct = true;
+		Runnable task = new Runnable(){
+			public void run(){
+				for (int myCounter = 0; myCounter < incrementsPerTask; myCounter++)
+					testCounter.increment();
+			}
+		};
+		for (int run=0; run<numOfRuns; run++){
+			testCounter = newCounter(name, numOfTasks);
+			ExecutorService executor = newTaskExecutor();
+
+			// start timing
+			long startTime = System.nanoTime();
+			for (int i=0; i<numOfTasks; i++) executor.execute(task);
+			executor.shutdown();
+			try{
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException ie) {};
+
+			// end timing
+			avrTime += (System.nanoTime() - startTime)/numOfRuns;
+			value = testCounter.sum();
+			if (value != total) correct = false;
+		}
+		System.out.println(name+(name.length() < 8 ? "\t\t" : "\t")+numOfTasks+"\t\t"+avrTime+"\t\t"+(avrTime/total)+"\t\t"+
+				(total*1000000/avrTime)+"\t\t"+((long)numOfTasks*1000000000/avrTime)+"\t\t"+
+				value+(correct?"":" (WRONG, expected "+total+")"));
+	}
+
+	/**
+	 * @return	an executor running every task on a virtual thread of its own where the JVM has them,
+	 * 			and on a pool of a thread per core otherwise
+	 */
+	private static ExecutorService newTaskExecutor(){
+		if (virtualThreads){
+			// looked up reflectively, so that the harness still compiles and runs on older JVMs
+			try {
+				Method newVirtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService)newVirtualExecutor.invoke(null);
+			} catch (Exception e) {
+				virtualThreads = false;
+			}
+		}
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * runs the given ticket counter with n threads, and checks that no value was handed out twice
+	 */
+	private static void checkDistinct(String name, int n){
+		testCounter = newCounter(name, n);
+		seen = new AtomicIntegerArray(n*N);
+		runThreads(n);
+		int missing = 0;
+		for (int i=0; i<n*N; i++)
+			if (seen.get(i) == 0) missing++;
+		System.out.println("distinct values check for "+name+" with "+n+" threads: "+
+				(missing == 0 ? "OK" : "FAILED ("+missing+" values missing or handed out twice)"));
+		seen = null;
+	}
+
+	/**
+	 * runs n threads over testCounter
+	 * @return
+	 * 				the total running time in nanosecs
+	 */
+	private static long runThreads(int n){
+		// start timing
+		long startTime = System.nanoTime();
+
+		MyThread[] threads = new MyThread[n];
+		for (int i=0; i<n; i++) threads[i] = new MyThread(i);
+		for (int i=0; i<n; i++) threads[i].start();
+		try{
+			for (int i=0; i<n; i++) threads[i].join();
+		} catch (InterruptedException ie) {};
+
+		// end timing
+		return System.nanoTime() - startTime;
+	}
+
+	// MyThread class for testing
+	private static class MyThread extends Thread {
+		final private int id;
+
+		public MyThread(int id){
+			this.id = id;
+		}
+
+		public void run(){
+			ThreadID.set(id);
+			if (seen != null){
+				// record every value handed out
+				TicketCounter ticketCounter = (TicketCounter)testCounter;
+				for (int myCounter = 0; myCounter < N; myCounter++){
+					int value = ticketCounter.getAndIncrement();
+					if (0 <= value && value < seen.length()) seen.set(value, 1);
+				}
+				return;
+			}
+			for (int myCounter = 0; myCounter < N; myCounter++){
+				testCounter.increment();
+			}
+		}
+	}
+
+	// samples the staleness of a BatchingCounter until done
+	private static class StalenessSampler extends Thread {
+		final private BatchingCounter counter;
+		volatile boolean done = false;
+		long samples = 0, totalStaleness = 0, maxStaleness = 0;
+
+		public StalenessSampler(BatchingCounter counter){
+			this.counter = counter;
+		}
+
+		public void run(){
+			while (!done){
+				long staleness = counter.staleness();
+				samples++;
+				totalStaleness += staleness;
+				maxStaleness = Math.max(maxStaleness, staleness);
+				LockSupport.parkNanos(samplingInterval);
+			}
+		}
+	}
+
+	// base class for extension by the benchmarked counters
+	public abstract static class Counter{
+		// abstract methods to be implemented in all counters
+		abstract public void increment();
+		abstract public long sum();
+	}
+
+	// base class for counters handing out distinct values
+	public abstract static class TicketCounter extends Counter{
+		abstract public int getAndIncrement();
+
+		public void increment(){
+			getAndIncrement();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package mpp;
+
+/**
+ * Merger network of a given width: merges two step sequences of width/2 into a step sequence of width
+ */
+public class Merger {
+	private Merger[] half;		// the two sub-mergers, for width > 2
+	private Balancer[] layer;	// final layer of balancers
+	private final int width;
+
+	/**
+	 * constructor
+	 * @param width
+	 * 				Network width, a power of 2
+	 */
+	public Merger(int width){
+		this.width = width;
+		layer = new Balancer[width/2];
+		for (int i=0; i<width/2; i++)
+			layer[i] = new Balancer();
+		if (width > 2)
+			half = new Merger[]{new Merger(width/2), new Merger(width/2)};
+	}
+
+	/**
+	 * @param input
+	 * 				The input wire
+	 * @return
+	 * 				The output wire
+	 */
+	public int traverse(int input){
+		int output = 0;
+		if (width > 2){
+			if (input < width/2) output = half[input % 2].traverse(input/2);
+			else output = half[1 - (input % 2)].traverse(input/2);
+		}
+		return 2*output + layer[output].traverse(0);
+	}
+}
@@ -0,0 +1,51 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import mpp.Main.*;
+
+/**
+ * Striped counter: every thread increments its own cell, and the counter value is the sum of all cells.
+ * Each cell is padded to a cache line of its own, so threads on different cells never share a line.
+ * sum() is exact at quiescence (no increment in progress); while increments are running it returns
+ * a value between the counter value at the start of the call and the value at its end.
+ */
+public class ShardedCounter extends Counter{
+	// longs per cell: 16 longs = 128 bytes, a cache line plus its adjacent-line prefetch partner
+	private static final int PAD = 16;
+
+	private AtomicLongArray cells;
+	private int numOfCells;
+	private int mask;
+
+	/**
+	 * default constructor, 4 cells per available processor
+	 */
+	public ShardedCounter(){
+		this(4*Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * constructor
+	 * @param numOfCells
+	 * 				Minimal number of cells, rounded up to a power of 2
+	 */
+	public ShardedCounter(int numOfCells){
+		int size = 1;
+		while (size < numOfCells) size <<= 1;
+		this.numOfCells = size;
+		this.mask = size-1;
+		cells = new AtomicLongArray(size*PAD);
+	}
+
+	public void increment(){
+		// each thread sticks to the cell of its index, threads beyond the number of cells share
+		cells.getAndIncrement((ThreadID.get() & mask)*PAD);
+	}
+
+	public long sum(){
+		long sum = 0;
+		for (int i=0; i<numOfCells; i++)
+			sum += cells.get(i*PAD);
+		return sum;
+	}
+}
@@ -0,0 +1,62 @@
+package mpp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Base class for the spin locks benchmarked by Main.
+ * A spin lock implements lock(), tryLock() and unlock(); the interruptible and timed
+ * acquisitions retry tryLock(), spinning a while and then yielding.
+ */
+public abstract class SpinLock implements Lock {
+	private static final int SPINS = 64;	// failed attempts before yielding between attempts
+
+	abstract public void lock();
+
+	abstract public boolean tryLock();
+
+	abstract public void unlock();
+
+	public void lockInterruptibly() throws InterruptedException {
+		int attempts = 0;
+		while (true) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (tryLock())
+				return;
+			attempts = pause(attempts);
+		}
+	}
+
+	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(time);
+		int attempts = 0;
+		while (true) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (tryLock())
+				return true;
+			if (deadline - System.nanoTime() <= 0)
+				return false;
+			attempts = pause(attempts);
+		}
+	}
+
+	public Condition newCondition() {
+		return new LockCondition(this);
+	}
+
+	/**
+	 * waits between two failed attempts
+	 * @return	the number of attempts so far
+	 */
+	private static int pause(int attempts) {
+		if (attempts < SPINS) {
+			Thread.onSpinWait();
+			return attempts+1;
+		}
+		Thread.yield();
+		return attempts;
+	}
+}
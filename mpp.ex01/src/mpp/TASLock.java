@@ -0,0 +1,22 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test-and-set lock: every waiting thread keeps swapping the lock word
+ */
+public class TASLock extends SpinLock {
+	AtomicBoolean state = new AtomicBoolean(false);
+
+	public void lock() {
+		while (state.getAndSet(true)) {}
+	}
+
+	public boolean tryLock() {
+		return !state.getAndSet(true);
+	}
+
+	public void unlock() {
+		state.set(false);
+	}
+}
@@ -0,0 +1,27 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test-and-test-and-set lock: waiting threads spin on their cached copy of the lock word
+ * and only try to swap it once it is seen free
+ */
+public class TTASLock extends SpinLock {
+	AtomicBoolean state = new AtomicBoolean(false);
+
+	public void lock() {
+		while (true) {
+			while (state.get()) {}
+			if (!state.getAndSet(true))
+				return;
+		}
+	}
+
+	public boolean tryLock() {
+		return !state.get() && !state.getAndSet(true);
+	}
+
+	public void unlock() {
+		state.set(false);
+	}
+}
@@ -0,0 +1,85 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lamport's Bakery lock for n threads: a thread takes a label larger than all labels it sees,
+ * and enters once no interested thread holds a smaller (label, index) pair - first come first served.
+ * A thread's index is taken from the ThreadID registry and must be smaller than n.
+ */
+public class BakeryLock extends SpinLock {
+	private AtomicIntegerArray flag;	// which threads are interested
+	private AtomicLongArray label;		// the label each thread took
+	private int n;
+	private WaitStrategy strategy;
+
+	/**
+	 * constructor, waiting with the adaptive wait strategy
+	 * @param n
+	 * 				Number of threads
+	 */
+	public BakeryLock(int n) {
+		this(n, WaitStrategy.ADAPTIVE);
+	}
+
+	/**
+	 * constructor
+	 * @param n
+	 * 				Number of threads
+	 * @param strategy
+	 * 				How to wait for the threads before me
+	 */
+	public BakeryLock(int n, WaitStrategy strategy) {
+		this.n = n;
+		this.strategy = strategy;
+		flag = new AtomicIntegerArray(n);
+		label = new AtomicLongArray(n);
+	}
+
+	public void lock() {
+		int i = ThreadID.get();
+		// doorway
+		flag.set(i, 1);
+		long max = 0;
+		for (int k=0; k<n; k++)
+			max = Math.max(max, label.get(k));
+		label.set(i, max+1);
+		// wait for the threads with smaller labels
+		int waits = 0;
+		while (conflict(i)) waits = strategy.idle(waits);
+	}
+
+	public boolean tryLock() {
+		int i = ThreadID.get();
+		flag.set(i, 1);
+		long max = 0;
+		for (int k=0; k<n; k++)
+			max = Math.max(max, label.get(k));
+		label.set(i, max+1);
+		if (conflict(i)) {
+			flag.set(i, 0); // give up my label, as unlock() does
+			return false;
+		}
+		return true;
+	}
+
+	public void unlock() {
+		flag.set(ThreadID.get(), 0);
+	}
+
+	/**
+	 * @return	true if some other interested thread comes before me in (label, index) order
+	 */
+	private boolean conflict(int i) {
+		long myLabel = label.get(i);
+		for (int k=0; k<n; k++) {
+			if (k != i && flag.get(k) == 1) {
+				long otherLabel = label.get(k);
+				if (otherLabel < myLabel || (otherLabel == myLabel && k < i))
+					return true;
+			}
+		}
+		return false;
+	}
+}
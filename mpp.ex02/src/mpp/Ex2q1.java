@@ -54,6 +54,7 @@ public class Ex2q1 {
 	    }
 
 	    public void run(){
+	    	ThreadID.set(id);
 	    	for (int i=0; i<N; i++){
 	    		peterson.lock();
 	    		sharedCounter++;
@@ -70,15 +71,16 @@ public class Ex2q1 {
 		private volatile int victim;
 		
 		public void lock() {
-			int i = ((MyThread)Thread.currentThread()).getMyThreadId();
+			int i = ThreadID.get();
 			int j = 1 - i;
 			flag[i] = true; // Im interested
 			victim = i; // you go first
-			while (flag[j] && victim == i) {} // wait
+			int waits = 0;
+			while (flag[j] && victim == i) waits = WaitStrategy.ADAPTIVE.idle(waits); // wait
 		}
 		
 		public void unlock() {
-			int i = ((MyThread)Thread.currentThread()).getMyThreadId();
+			int i = ThreadID.get();
 			flag[i] = false; // Im not interested
 		}
 	}
@@ -56,6 +56,7 @@ public class Ex2q1fix {
 	    }
 
 	    public void run(){
+	    	ThreadID.set(id);
 	    	for (int i=0; i<N; i++){
 	    		peterson.lock();
 	    		sharedCounter++;
@@ -82,15 +83,16 @@ public class Ex2q1fix {
 		}
 		
 		public void lock() {
-			int i = ((MyThread)Thread.currentThread()).getMyThreadId();
+			int i = ThreadID.get();
 			int j = 1 - i;
 			flag.get(i).set(true); // Im interested
 			victim = i; // you go first
-			while (flag.get(j).get() && victim == i) {} // wait
+			int waits = 0;
+			while (flag.get(j).get() && victim == i) waits = WaitStrategy.ADAPTIVE.idle(waits); // wait
 		}
 		
 		public void unlock() {
-			int i = ((MyThread)Thread.currentThread()).getMyThreadId();
+			int i = ThreadID.get();
 			flag.get(i).set(false); // Im not interested
 		}
 	}
@@ -0,0 +1,77 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Filter lock for n threads: a thread goes through n-1 levels, each letting at most one
+ * thread less through, like a Peterson lock per level.
+ * A thread's index is taken from the ThreadID registry and must be smaller than n.
+ */
+public class FilterLock extends SpinLock {
+	private AtomicIntegerArray level;	// the level each thread is trying to enter
+	private AtomicIntegerArray victim;	// the last thread to enter each level
+	private int n;
+	private WaitStrategy strategy;
+
+	/**
+	 * constructor, waiting with the adaptive wait strategy
+	 * @param n
+	 * 				Number of threads
+	 */
+	public FilterLock(int n) {
+		this(n, WaitStrategy.ADAPTIVE);
+	}
+
+	/**
+	 * constructor
+	 * @param n
+	 * 				Number of threads
+	 * @param strategy
+	 * 				How to wait at each level
+	 */
+	public FilterLock(int n, WaitStrategy strategy) {
+		this.n = n;
+		this.strategy = strategy;
+		level = new AtomicIntegerArray(n);
+		victim = new AtomicIntegerArray(n);
+	}
+
+	public void lock() {
+		int me = ThreadID.get();
+		for (int i=1; i<n; i++) {
+			level.set(me, i);
+			victim.set(i, me);
+			// spin while some other thread is at my level or above, and I am the victim
+			int waits = 0;
+			while (conflict(me, i)) waits = strategy.idle(waits);
+		}
+	}
+
+	public boolean tryLock() {
+		int me = ThreadID.get();
+		for (int i=1; i<n; i++) {
+			level.set(me, i);
+			victim.set(i, me);
+			if (conflict(me, i)) {
+				level.set(me, 0); // withdraw from all levels, as unlock() does
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void unlock() {
+		level.set(ThreadID.get(), 0);
+	}
+
+	/**
+	 * @return	true if some other thread is at level i or above while I am the victim of level i
+	 */
+	private boolean conflict(int me, int i) {
+		for (int k=0; k<n; k++) {
+			if (k != me && level.get(k) >= i && victim.get(i) == me)
+				return true;
+		}
+		return false;
+	}
+}
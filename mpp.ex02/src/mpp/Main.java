@@ -0,0 +1,220 @@
+package mpp;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Main class for benchmarking mutual exclusion locks over the shared counter of Ex2q1
+ */
+public class Main {
+	// initialize parameters
+	private static int[] numOfThreadsArray = {2, 4, 8, 16};						// thread counts to sweep
+	private static String[] lockNames = {"peterson", "filter", "bakery"};		// locks to compare
+	private static int[] tournamentThreadCounts = {2, 8, 32, 64, 128};			// thread counts for the tournament lock
+	private static String[] tournamentLockNames = {"peterson", "filter", "tournament"};
+	private static int[] petersonThreadCounts = {1, 2};							// thread counts for the Peterson variants
+	private static String[] petersonLockNames = {"peterson", "vh-volatile", "vh-acqrel", "vh-opaque"};
+	private static int[] oversubscriptionFactors = {1, 2, 8};					// threads per core
+	private static WaitStrategy waitStrategy = WaitStrategy.ADAPTIVE;			// how the locks wait
+	private static int N = Ex2q1.N;												// lock acquisitions per thread
+	private static int waitBound = Ex2q1.waitBound;								// wait bound for each thread (millisecs)
+	private static Lock lock;													// lock under test
+	private static int sharedCounter;											// counter protected by the lock
+	private static volatile long entries;										// critical section entries so far
+
+	/**
+	 * main for testing
+	 * @param args
+	 * 				benchmark mode and its arguments
+	 */
+	public static void main(String[] args) {
+		// check input
+		if (args.length < 1){
+			printUsage();
+			System.exit(-1);
+		}
+		String mode = args[0];
+
+		if (mode.equals("fairness")){
+			int[] threadCounts = parseThreadCounts(args, 1, numOfThreadsArray);
+			printHeader();
+			sweep:
+			for (int n: threadCounts){
+				for (String name: lockNames)
+					if (!runLock(name, n)) break sweep;
+			}
+		} else if (mode.equals("tournament")){
+			int[] threadCounts = parseThreadCounts(args, 1, tournamentThreadCounts);
+			printHeader();
+			sweep:
+			for (int n: threadCounts){
+				for (String name: tournamentLockNames)
+					if (!runLock(name, n)) break sweep;
+			}
+		} else if (mode.equals("varhandle")){
+			int[] threadCounts = parseThreadCounts(args, 1, petersonThreadCounts);
+			printHeader();
+			sweep:
+			for (int n: threadCounts){
+				for (String name: petersonLockNames)
+					if (!runLock(name, n)) break sweep;
+			}
+		} else if (mode.equals("oversub")){
+			String name = (args.length > 1) ? args[1] : "tournament";
+			int cores = Runtime.getRuntime().availableProcessors();
+			sweep:
+			for (int factor: oversubscriptionFactors){
+				int n = factor*cores;
+				System.out.println(factor+"x oversubscription ("+n+" threads on "+cores+" cores):");
+				printHeader();
+				waitStrategy = WaitStrategy.ADAPTIVE;
+				System.out.println("adaptive wait (spin "+WaitStrategy.DEFAULT_SPINS+", yield "+WaitStrategy.DEFAULT_YIELDS+
+						", then park "+WaitStrategy.DEFAULT_PARK_NANOS+" nanosecs):");
+				if (!runLock(name, n)) break sweep;
+				waitStrategy = WaitStrategy.SPIN;
+				System.out.println("spin only:");
+				if (!runLock(name, n)) break sweep;
+				System.out.println("");
+			}
+		} else {
+			printUsage();
+			System.exit(-1);
+		}
+		System.out.println("");
+	}
+
+	/**
+	 * prints the usage message
+	 */
+	private static void printUsage(){
+		System.err.println("usage: Main <mode> [arguments]");
+		System.err.println("modes:");
+		System.err.println("  fairness [#threads...]\t\tthroughput and max bypass of the Peterson, Filter and Bakery locks");
+		System.err.println("  tournament [#threads...]\tacquire latency and throughput of the tournament lock against");
+		System.err.println("  \t\t\t\tthe Peterson and Filter locks");
+		System.err.println("  varhandle [#threads...]\tcost of the VarHandle Peterson lock per memory ordering mode");
+		System.err.println("  \t\t\t\t(volatile, acquire/release, opaque with fences), 1 and 2 threads");
+		System.err.println("  oversub [lock]\t\t\tthroughput and CPU time of a lock (default: tournament) with the adaptive");
+		System.err.println("  \t\t\t\tand the spin-only wait strategies, at 1, 2 and 8 threads per core");
+	}
+
+	/**
+	 * parses the thread counts given from args[from] on, or returns the given defaults if there are none
+	 */
+	private static int[] parseThreadCounts(String[] args, int from, int[] defaults){
+		if (args.length <= from) return defaults;
+		int[] threadCounts = new int[args.length-from];
+		for (int i=from; i<args.length; i++){
+			threadCounts[i-from] = Integer.valueOf(args[i]);
+			if (threadCounts[i-from] <= 0){
+				System.err.println("number of threads must be positive");
+				System.exit(-1);
+			}
+		}
+		return threadCounts;
+	}
+
+	/**
+	 * prints the results table header
+	 */
+	private static void printHeader(){
+		System.out.println("lock\t\t#threads\trunning-time (nanosecs)\tacquisitions/msec\tavg acquire (nanosecs)\tcpu time (millisecs)\tmax bypass\tshared counter");
+		System.out.println("====\t\t========\t=======================\t=================\t======================\t====================\t==========\t==============");
+	}
+
+	/**
+	 * creates a new lock by its name, for n threads
+	 * @return
+	 * 				the lock, or null if it does not support n threads
+	 */
+	private static Lock newLock(String name, int n){
+		if (name.equals("peterson")) return (n <= 2) ? new PetersonLock(waitStrategy) : null;
+		else if (name.equals("vh-volatile")) return (n <= 2) ? new VarHandlePetersonLock(VarHandlePetersonLock.Mode.VOLATILE, waitStrategy) : null;
+		else if (name.equals("vh-acqrel")) return (n <= 2) ? new VarHandlePetersonLock(VarHandlePetersonLock.Mode.ACQUIRE_RELEASE, waitStrategy) : null;
+		else if (name.equals("vh-opaque")) return (n <= 2) ? new VarHandlePetersonLock(VarHandlePetersonLock.Mode.OPAQUE, waitStrategy) : null;
+		else if (name.equals("filter")) return new FilterLock(n, waitStrategy);
+		else if (name.equals("bakery")) return new BakeryLock(n, waitStrategy);
+		else if (name.equals("tournament")) return new TournamentLock(n, waitStrategy);
+		else throw new IllegalArgumentException("unknown lock: "+name);
+	}
+
+	/**
+	 * runs the given lock with n threads and prints the results
+	 * @return
+	 * 				false if some thread did not finish within the wait bound (it still runs, so stop testing)
+	 */
+	private static boolean runLock(String name, int n){
+		lock = newLock(name, n);
+		if (lock == null){
+			System.out.println(name+"\t"+n+"\t\tn/a");
+			return true;
+		}
+		sharedCounter = 0;
+		entries = 0;
+
+		// start timing
+		long startTime = System.nanoTime();
+
+		MyThread[] threads = new MyThread[n];
+		for (int i=0; i<n; i++){
+			threads[i] = new MyThread(i);
+			threads[i].setDaemon(true);
+		}
+		for (int i=0; i<n; i++) threads[i].start();
+		try{
+			for (int i=0; i<n; i++) threads[i].join(waitBound);
+		} catch (InterruptedException ie) {};
+
+		// end timing
+		long time = System.nanoTime() - startTime;
+
+		long maxBypass = 0;
+		long acquireTime = 0;
+		long cpuTime = 0;
+		boolean timedOut = false;
+		for (MyThread thread: threads){
+			maxBypass = Math.max(maxBypass, thread.maxBypass);
+			acquireTime += thread.acquireTime;
+			// a thread that is still running did not record its cpu time yet
+			cpuTime += thread.isAlive() ? ManagementFactory.getThreadMXBean().getThreadCpuTime(thread.getId()) : thread.cpuTime;
+			if (thread.isAlive()) timedOut = true;
+		}
+		System.out.println(name+(name.length() < 8 ? "\t\t" : "\t")+n+"\t\t"+time+"\t\t"+
+				((long)n*N*1000000/time)+"\t\t\t"+(acquireTime/((long)n*N))+"\t\t\t"+(cpuTime/1000000)+"\t\t\t"+maxBypass+"\t\t"+sharedCounter+
+				(timedOut ? " (TIMED OUT after "+waitBound+" millisecs)" :
+					(sharedCounter == n*N ? "" : " (WRONG, expected "+(n*N)+")")));
+		return !timedOut;
+	}
+
+	// MyThread class for testing
+	private static class MyThread extends Thread {
+		final private int id;
+		// most critical section entries by others between my call to lock() and my own entry
+		long maxBypass = 0;
+		// total time spent in lock()
+		long acquireTime = 0;
+		// cpu time of the thread
+		long cpuTime = 0;
+
+		public MyThread(int id){
+			this.id = id;
+		}
+
+		public void run(){
+			// take my index in the registry
+			ThreadID.set(id);
+			for (int i=0; i<N; i++){
+				long before = entries;
+				long startTime = System.nanoTime();
+				lock.lock();
+				acquireTime += System.nanoTime() - startTime;
+				long bypass = entries - before;
+				entries++;
+				sharedCounter++;
+				lock.unlock();
+				if (bypass > maxBypass) maxBypass = bypass;
+			}
+			cpuTime = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+		}
+	}
+}
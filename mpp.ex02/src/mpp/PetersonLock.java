@@ -0,0 +1,79 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Peterson lock for two threads.
+ * As opposed to Ex2q1, the flags are really accessed as volatiles, and as opposed to Ex2q1fix
+ * they are a flat array with no extra indirection. A thread's side (0 or 1) is its index in
+ * the ThreadID registry, or is given explicitly by the caller.
+ */
+public class PetersonLock extends SpinLock {
+	private AtomicIntegerArray flag = new AtomicIntegerArray(2);
+	private volatile int victim;
+	private WaitStrategy strategy;
+
+	/**
+	 * default constructor, waiting with the adaptive wait strategy
+	 */
+	public PetersonLock() {
+		this(WaitStrategy.ADAPTIVE);
+	}
+
+	/**
+	 * constructor
+	 * @param strategy
+	 * 				How to wait for the other thread
+	 */
+	public PetersonLock(WaitStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	public void lock() {
+		lock(ThreadID.get());
+	}
+
+	public boolean tryLock() {
+		return tryLock(ThreadID.get());
+	}
+
+	public void unlock() {
+		unlock(ThreadID.get());
+	}
+
+	/**
+	 * @param i
+	 * 				My side, 0 or 1
+	 */
+	public void lock(int i) {
+		int j = 1 - i;
+		flag.set(i, 1); // I'm interested
+		victim = i; // you go first
+		int waits = 0;
+		while (flag.get(j) == 1 && victim == i) waits = strategy.idle(waits); // wait
+	}
+
+	/**
+	 * enters only if the other thread is not interested or lets me go first
+	 * @param i
+	 * 				My side, 0 or 1
+	 */
+	public boolean tryLock(int i) {
+		int j = 1 - i;
+		flag.set(i, 1);
+		victim = i;
+		if (flag.get(j) == 1 && victim == i) {
+			flag.set(i, 0); // withdraw, as if I entered and left
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param i
+	 * 				My side, 0 or 1
+	 */
+	public void unlock(int i) {
+		flag.set(i, 0); // I'm not interested
+	}
+}
@@ -0,0 +1,47 @@
+package mpp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Base class for the spin locks benchmarked by Main.
+ * A spin lock implements lock(), tryLock() and unlock(); the interruptible and timed
+ * acquisitions retry tryLock(), waiting between attempts with the adaptive wait strategy.
+ */
+public abstract class SpinLock implements Lock {
+	abstract public void lock();
+
+	abstract public boolean tryLock();
+
+	abstract public void unlock();
+
+	public void lockInterruptibly() throws InterruptedException {
+		int waits = 0;
+		while (true) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (tryLock())
+				return;
+			waits = WaitStrategy.ADAPTIVE.idle(waits);
+		}
+	}
+
+	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(time);
+		int waits = 0;
+		while (true) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (tryLock())
+				return true;
+			if (deadline - System.nanoTime() <= 0)
+				return false;
+			waits = WaitStrategy.ADAPTIVE.idle(waits);
+		}
+	}
+
+	public Condition newCondition() {
+		return new LockCondition(this);
+	}
+}
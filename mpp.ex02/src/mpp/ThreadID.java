@@ -0,0 +1,41 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry giving each thread a small index of its own, assigned on first use
+ */
+public class ThreadID {
+	// the next index to be handed out
+	private static AtomicInteger nextID = new AtomicInteger(0);
+
+	// my index
+	private static ThreadLocal<Integer> threadID = new ThreadLocal<Integer>() {
+		protected Integer initialValue() {
+			return nextID.getAndIncrement();
+		}
+	};
+
+	/**
+	 * @return	the index of the calling thread
+	 */
+	public static int get(){
+		return threadID.get();
+	}
+
+	/**
+	 * sets the index of the calling thread explicitly
+	 * @param index
+	 * 				The index to be used by the calling thread from now on
+	 */
+	public static void set(int index){
+		threadID.set(index);
+	}
+
+	/**
+	 * starts handing out indices from 0 again (for threads that did not ask for one yet)
+	 */
+	public static void reset(){
+		nextID.set(0);
+	}
+}
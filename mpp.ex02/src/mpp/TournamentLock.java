@@ -0,0 +1,68 @@
+package mpp;
+
+/**
+ * Tournament lock for n threads: a binary tree of two-thread Peterson locks.
+ * A thread wins the Peterson locks on the path from its leaf up to the root, O(log n) of them,
+ * and releases them from the root back down.
+ * A thread's index is taken from the ThreadID registry and must be smaller than n.
+ */
+public class TournamentLock extends SpinLock {
+	private PetersonLock[] nodes;	// the tree in heap order, the root is nodes[1]
+	private int width;				// leaf positions, n rounded up to a power of 2
+	private int depth;				// log2(width)
+
+	/**
+	 * constructor, waiting with the adaptive wait strategy
+	 * @param n
+	 * 				Number of threads, rounded up to a power of 2
+	 */
+	public TournamentLock(int n) {
+		this(n, WaitStrategy.ADAPTIVE);
+	}
+
+	/**
+	 * constructor
+	 * @param n
+	 * 				Number of threads, rounded up to a power of 2
+	 * @param strategy
+	 * 				How to wait in each of the Peterson nodes
+	 */
+	public TournamentLock(int n, WaitStrategy strategy) {
+		width = 2;
+		depth = 1;
+		while (width < n) {
+			width <<= 1;
+			depth++;
+		}
+		nodes = new PetersonLock[width];
+		for (int i=1; i<width; i++)
+			nodes[i] = new PetersonLock(strategy);
+	}
+
+	public void lock() {
+		int position = width + ThreadID.get();
+		// climb from my leaf to the root, my side in each node being the child I came from
+		for (int k=1; k<=depth; k++)
+			nodes[position >> k].lock((position >> (k-1)) & 1);
+	}
+
+	public boolean tryLock() {
+		int position = width + ThreadID.get();
+		for (int k=1; k<=depth; k++) {
+			if (!nodes[position >> k].tryLock((position >> (k-1)) & 1)) {
+				// release the nodes won so far, from the top one down to my leaf
+				for (int m=k-1; m>=1; m--)
+					nodes[position >> m].unlock((position >> (m-1)) & 1);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void unlock() {
+		int position = width + ThreadID.get();
+		// release from the root down to my leaf
+		for (int k=depth; k>=1; k--)
+			nodes[position >> k].unlock((position >> (k-1)) & 1);
+	}
+}
@@ -0,0 +1,151 @@
+package mpp;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Peterson lock for two threads over a flat int array accessed through a VarHandle, with the
+ * flags and the victim each padded to a cache line of its own.
+ * The memory ordering of the accesses is chosen by a Mode; all modes are correct:
+ * 	VOLATILE		- all accesses are volatile (sequentially consistent)
+ * 	ACQUIRE_RELEASE	- release writes and acquire reads, plus a full fence between raising my flag
+ * 					  and reading the other's, as Peterson needs a store-load ordering there
+ * 	OPAQUE			- opaque accesses, ordered by explicit fences only where the algorithm needs them
+ * A thread's side (0 or 1) is its index in the ThreadID registry, or is given explicitly by the caller.
+ */
+public class VarHandlePetersonLock extends SpinLock {
+	public enum Mode {VOLATILE, ACQUIRE_RELEASE, OPAQUE};
+
+	// ints per slot: 32 ints = 128 bytes, a cache line plus its adjacent-line prefetch partner
+	private static final int PAD = 32;
+	private static final int FLAG = PAD;		// flag[i] is at FLAG + i*PAD
+	private static final int VICTIM = 3*PAD;
+
+	private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private final int[] state = new int[5*PAD];
+	private final Mode mode;
+	private final WaitStrategy strategy;
+
+	/**
+	 * constructor, waiting with the adaptive wait strategy
+	 * @param mode
+	 * 				The memory ordering of the flag and victim accesses
+	 */
+	public VarHandlePetersonLock(Mode mode) {
+		this(mode, WaitStrategy.ADAPTIVE);
+	}
+
+	/**
+	 * constructor
+	 * @param mode
+	 * 				The memory ordering of the flag and victim accesses
+	 * @param strategy
+	 * 				How to wait for the other thread
+	 */
+	public VarHandlePetersonLock(Mode mode, WaitStrategy strategy) {
+		this.mode = mode;
+		this.strategy = strategy;
+	}
+
+	public void lock() {
+		lock(ThreadID.get());
+	}
+
+	public boolean tryLock() {
+		return tryLock(ThreadID.get());
+	}
+
+	public void unlock() {
+		unlock(ThreadID.get());
+	}
+
+	/**
+	 * @param i
+	 * 				My side, 0 or 1
+	 */
+	public void lock(int i) {
+		int myFlag = FLAG + i*PAD;
+		int otherFlag = FLAG + (1-i)*PAD;
+		int waits = 0;
+		switch (mode) {
+		case VOLATILE:
+			INTS.setVolatile(state, myFlag, 1); // I'm interested
+			INTS.setVolatile(state, VICTIM, i); // you go first
+			while ((int)INTS.getVolatile(state, otherFlag) == 1 && (int)INTS.getVolatile(state, VICTIM) == i)
+				waits = strategy.idle(waits); // wait
+			break;
+		case ACQUIRE_RELEASE:
+			INTS.setRelease(state, myFlag, 1);
+			INTS.setRelease(state, VICTIM, i); // ordered after my flag
+			VarHandle.fullFence(); // my writes before my reads
+			while ((int)INTS.getAcquire(state, otherFlag) == 1 && (int)INTS.getAcquire(state, VICTIM) == i)
+				waits = strategy.idle(waits);
+			break;
+		case OPAQUE:
+			INTS.setOpaque(state, myFlag, 1);
+			VarHandle.storeStoreFence(); // my flag before the victim
+			INTS.setOpaque(state, VICTIM, i);
+			VarHandle.fullFence(); // my writes before my reads
+			while ((int)INTS.getOpaque(state, otherFlag) == 1 && (int)INTS.getOpaque(state, VICTIM) == i)
+				waits = strategy.idle(waits);
+			VarHandle.acquireFence(); // the critical section after my reads
+			break;
+		}
+	}
+
+	/**
+	 * enters only if the other thread is not interested or lets me go first
+	 * @param i
+	 * 				My side, 0 or 1
+	 */
+	public boolean tryLock(int i) {
+		int myFlag = FLAG + i*PAD;
+		int otherFlag = FLAG + (1-i)*PAD;
+		boolean wait = true;
+		switch (mode) {
+		case VOLATILE:
+			INTS.setVolatile(state, myFlag, 1);
+			INTS.setVolatile(state, VICTIM, i);
+			wait = (int)INTS.getVolatile(state, otherFlag) == 1 && (int)INTS.getVolatile(state, VICTIM) == i;
+			break;
+		case ACQUIRE_RELEASE:
+			INTS.setRelease(state, myFlag, 1);
+			INTS.setRelease(state, VICTIM, i);
+			VarHandle.fullFence();
+			wait = (int)INTS.getAcquire(state, otherFlag) == 1 && (int)INTS.getAcquire(state, VICTIM) == i;
+			break;
+		case OPAQUE:
+			INTS.setOpaque(state, myFlag, 1);
+			VarHandle.storeStoreFence();
+			INTS.setOpaque(state, VICTIM, i);
+			VarHandle.fullFence();
+			wait = (int)INTS.getOpaque(state, otherFlag) == 1 && (int)INTS.getOpaque(state, VICTIM) == i;
+			VarHandle.acquireFence();
+			break;
+		}
+		if (wait)
+			unlock(i); // withdraw, as if I entered and left
+		return !wait;
+	}
+
+	/**
+	 * @param i
+	 * 				My side, 0 or 1
+	 */
+	public void unlock(int i) {
+		int myFlag = FLAG + i*PAD;
+		switch (mode) {
+		case VOLATILE:
+			INTS.setVolatile(state, myFlag, 0); // I'm not interested
+			break;
+		case ACQUIRE_RELEASE:
+			INTS.setRelease(state, myFlag, 0);
+			break;
+		case OPAQUE:
+			VarHandle.releaseFence(); // the critical section before my flag
+			INTS.setOpaque(state, myFlag, 0);
+			break;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package mpp;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Escalating wait policy for busy-wait loops: first spin (with Thread.onSpinWait),
+ * then yield the processor, then park for a while, so that a waiter on an oversubscribed
+ * machine gives its timeslice to the thread it is waiting for instead of burning it.
+ * A strategy holds no per-waiter state, and can be shared by all threads:
+ *
+ * 	int waits = 0;
+ * 	while (!condition) waits = strategy.idle(waits);
+ */
+public class WaitStrategy {
+	// default thresholds
+	public static final int DEFAULT_SPINS = 100;
+	public static final int DEFAULT_YIELDS = 10;
+	public static final long DEFAULT_PARK_NANOS = 20*1000;
+
+	// spin only, as the original busy-wait loops
+	public static final WaitStrategy SPIN = new WaitStrategy(Integer.MAX_VALUE, 0, 0);
+	// spin, then yield, then park
+	public static final WaitStrategy ADAPTIVE = new WaitStrategy(DEFAULT_SPINS, DEFAULT_YIELDS, DEFAULT_PARK_NANOS);
+
+	private final int spins;
+	private final int yields;
+	private final long parkNanos;
+
+	/**
+	 * constructor
+	 * @param spins
+	 * 				Number of waits to spin before yielding
+	 * @param yields
+	 * 				Number of waits to yield before parking
+	 * @param parkNanos
+	 * 				Nanosecs to park on every wait from then on
+	 */
+	public WaitStrategy(int spins, int yields, long parkNanos) {
+		this.spins = spins;
+		this.yields = yields;
+		this.parkNanos = parkNanos;
+	}
+
+	/**
+	 * waits once
+	 * @param waits
+	 * 				Number of times the caller waited so far in the current busy-wait loop
+	 * @return
+	 * 				The number of times the caller waited, including this one
+	 */
+	public int idle(int waits) {
+		if (waits < spins)
+			Thread.onSpinWait();
+		else if (waits - spins < yields)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(parkNanos);
+		return (waits == Integer.MAX_VALUE) ? waits : waits+1;
+	}
+}
@@ -0,0 +1,41 @@
+package mpp;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Randomized exponential backoff, in busy-wait iterations
+ */
+public class Backoff {
+	final int minDelay, maxDelay;
+	int limit;
+
+	/**
+	 * constructor
+	 * @param min
+	 * 				Initial backoff limit (iterations)
+	 * @param max
+	 * 				Maximal backoff limit (iterations)
+	 */
+	public Backoff(int min, int max) {
+		minDelay = min;
+		maxDelay = max;
+		limit = minDelay;
+	}
+
+	/**
+	 * waits a random number of iterations up to the current limit, and doubles the limit
+	 */
+	public void backoff() {
+		int delay = ThreadLocalRandom.current().nextInt(limit) + 1;
+		limit = Math.min(maxDelay, 2*limit);
+		for (int i=0; i<delay; i++)
+			Thread.onSpinWait();
+	}
+
+	/**
+	 * starts over from the initial limit (for reusing the backoff in another acquisition)
+	 */
+	public void reset() {
+		limit = minDelay;
+	}
+}
@@ -0,0 +1,238 @@
+package mpp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ *	Implementation of an abortable Cohort Lock
+ *	Threads are mapped to clusters by their ThreadID (a cluster stands for a socket). A thread first takes
+ *	the local lock of its cluster and then the global lock, unless its cluster already holds it. On release,
+ *	the global lock is kept in the cluster and only the local lock is passed on while threads of the cluster
+ *	are waiting, up to a bound of consecutive local hand-offs.
+ *	Both locks are test-and-set locks with backoff, so they may be released by another thread than the one
+ *	that took them. A thread that times out after the local lock was passed on to its cluster makes sure the
+ *	global lock is not left to a cluster with nobody waiting.
+ */
+public class CohortLock implements Lock {
+	
+	// static members
+	private static final int DEFAULT_HANDOFFS = 64;
+	private static final int MIN_BACKOFF = 16;			// backoff limits (busy-wait iterations)
+	private static final int MAX_BACKOFF = 16*1024;
+	private static final long NO_TIMEOUT = Long.MAX_VALUE;
+	
+	// virtual members
+	private AtomicBoolean global = new AtomicBoolean(false);
+	private Cluster[] clusters;
+	private int[] clusterOf;
+	private int maxHandoffs;
+	private ThreadLocal<Backoff> myBackoff;
+	
+	/**
+	 * constructor, thread i is in cluster i modulo the number of clusters
+	 * @param numOfClusters
+	 * 				The number of clusters
+	 */
+	public CohortLock(int numOfClusters) {
+		this(new int[0], numOfClusters, DEFAULT_HANDOFFS);
+	}
+	
+	/**
+	 * constructor
+	 * @param clusterOf
+	 * 				The cluster of each thread by its ThreadID, threads beyond the array are in their ThreadID
+	 * 				modulo the number of clusters
+	 * @param numOfClusters
+	 * 				The number of clusters
+	 * @param maxHandoffs
+	 * 				The maximal number of consecutive hand-offs within a cluster
+	 */
+	public CohortLock(int[] clusterOf, int numOfClusters, int maxHandoffs) {
+		this.clusterOf = clusterOf;
+		this.maxHandoffs = maxHandoffs;
+		clusters = new Cluster[numOfClusters];
+		for (int i=0; i<numOfClusters; i++)
+			clusters[i] = new Cluster();
+		myBackoff = new ThreadLocal<Backoff>() {
+			protected Backoff initialValue() {
+				return new Backoff(MIN_BACKOFF, MAX_BACKOFF);
+			}
+		};
+	}
+
+	/**
+	 * Cohort Lock locking method
+	 * @param time
+	 * 				The maximum time to wait for the lock to be attained
+	 * @param unit
+	 * 				The time units for the time parameter
+	 * @return
+	 * 				If the lock is attained in the time frame given, returns true.
+	 * 				Otherwise returns false.
+	 * @throws InterruptedException
+	 * 				If interrupted while waiting (the lock is not attained)
+	 */
+	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+		return acquire(unit.toNanos(time), true);
+	}
+	
+	/**
+	 * waits for the lock with no time-out, not responding to interrupts
+	 */
+	public void lock() {
+		try {
+			acquire(NO_TIMEOUT, false);
+		} catch (InterruptedException ie) {
+			// not thrown when not interruptible
+		}
+	}
+	
+	/**
+	 * waits for the lock with no time-out
+	 * @throws InterruptedException
+	 * 				If interrupted while waiting (the lock is not attained)
+	 */
+	public void lockInterruptibly() throws InterruptedException {
+		acquire(NO_TIMEOUT, true);
+	}
+	
+	/**
+	 * attains the lock only if my cluster's local lock is free, and the global lock is free
+	 * or already held by my cluster
+	 */
+	public boolean tryLock() {
+		Cluster cluster = myCluster();
+		if (!cluster.local.compareAndSet(false, true))
+			return false;
+		if (cluster.ownsGlobal)
+			return true;
+		if (!global.compareAndSet(false, true)) {
+			cluster.local.set(false);
+			return false;
+		}
+		cluster.ownsGlobal = true;
+		return true;
+	}
+	
+	/**
+	 * Cohort Lock unlocking method
+	 */
+	public void unlock() {
+		Cluster cluster = myCluster();
+		if (cluster.waiting.get() > 0 && cluster.handoffs < maxHandoffs) {
+			// pass the lock on within my cluster
+			cluster.handoffs++;
+			cluster.local.set(false);
+			// the waiters may have all timed out meanwhile
+			releaseIfAbandoned(cluster);
+		} else {
+			cluster.handoffs = 0;
+			cluster.ownsGlobal = false;
+			global.set(false);
+			cluster.local.set(false);
+		}
+	}
+	
+	/**
+	 * @return	a new condition of this lock; await and signal must be called while holding the lock
+	 */
+	public Condition newCondition() {
+		return new LockCondition(this);
+	}
+	
+	/**
+	 * takes the local lock and then, unless my cluster holds it, the global lock, giving up on time-out
+	 * or (if interruptible) on interrupt
+	 * @param patience
+	 * 				The maximum time to wait (nanosecs), NO_TIMEOUT for none
+	 * @return
+	 * 				true if the lock is attained, false on time-out
+	 */
+	private boolean acquire(long patience, boolean interruptible) throws InterruptedException {
+		if (interruptible && Thread.interrupted())
+			throw new InterruptedException();
+		long startTime = System.nanoTime();
+		Cluster cluster = myCluster();
+		Backoff backoff = myBackoff.get();
+		
+		// local lock
+		cluster.waiting.getAndIncrement();
+		boolean locked = tryLock(cluster.local, backoff, startTime, patience, interruptible);
+		cluster.waiting.getAndDecrement();
+		if (!locked) {
+			// the lock may have been passed to my cluster for me
+			releaseIfAbandoned(cluster);
+			return gaveUp(interruptible);
+		}
+		if (cluster.ownsGlobal)
+			return true;
+		
+		// global lock
+		if (!tryLock(global, backoff, startTime, patience, interruptible)) {
+			cluster.local.set(false);
+			return gaveUp(interruptible);
+		}
+		cluster.ownsGlobal = true;
+		return true;
+	}
+	
+	/**
+	 * releases the global lock if my cluster holds it while nobody of the cluster holds or waits for the lock
+	 */
+	private void releaseIfAbandoned(Cluster cluster) {
+		if (cluster.waiting.get() == 0 && !cluster.local.get() && cluster.local.compareAndSet(false, true)) {
+			if (cluster.ownsGlobal) {
+				cluster.handoffs = 0;
+				cluster.ownsGlobal = false;
+				global.set(false);
+			}
+			cluster.local.set(false);
+		}
+	}
+	
+	/**
+	 * test-and-test-and-set with backoff until the time-out, or (if interruptible) an interrupt
+	 */
+	private static boolean tryLock(AtomicBoolean state, Backoff backoff, long startTime, long patience, boolean interruptible) {
+		backoff.reset();
+		while (true) {
+			while (state.get()) {
+				if (System.nanoTime() - startTime >= patience
+						|| (interruptible && Thread.currentThread().isInterrupted()))
+					return false;
+			}
+			if (!state.getAndSet(true))
+				return true;
+			backoff.backoff();
+		}
+	}
+	
+	/**
+	 * @return	false after a time-out
+	 * @throws InterruptedException
+	 * 				If the wait was given up because of an interrupt
+	 */
+	private static boolean gaveUp(boolean interruptible) throws InterruptedException {
+		if (interruptible && Thread.interrupted())
+			throw new InterruptedException();
+		return false;
+	}
+	
+	private Cluster myCluster() {
+		int id = ThreadID.get();
+		return clusters[(id < clusterOf.length) ? clusterOf[id] : id % clusters.length];
+	}
+	
+	/**
+	 * Class Cluster for the local lock of a cluster and its state, which is accessed under the local lock
+	 */
+	static class Cluster {
+		AtomicBoolean local = new AtomicBoolean(false);
+		AtomicInteger waiting = new AtomicInteger(0);
+		boolean ownsGlobal = false;
+		int handoffs = 0;
+	}
+}
@@ -0,0 +1,291 @@
+package mpp;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicStampedReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ *	Implementation of the Composite Lock, with the fast path
+ *	A thread first takes one of a small fixed array of nodes, backing off while the node it picked is taken,
+ *	and then waits in a queue of the node holders, spinning on its predecessor as in the Time-Out Lock.
+ *	The queue is never longer than the array, and no node is ever allocated after construction.
+ *	When nobody holds or waits for the lock, it is taken by a single CAS on the tail's stamp.
+ */
+public class CompositeLock implements Lock {
+	
+	// static members
+	private static final int DEFAULT_SIZE = 4;
+	private static final int MIN_BACKOFF = 16;			// backoff limits (busy-wait iterations)
+	private static final int MAX_BACKOFF = 16*1024;
+	private static final int FASTPATH = 1 << 30;		// stamp bit of a fast path holder
+	private static final int COUNTER = FASTPATH - 1;	// stamp bits counting the tail changes
+	private static final long NO_TIMEOUT = Long.MAX_VALUE;
+	
+	enum State {FREE, WAITING, RELEASED, ABORTED};
+	
+	// virtual members
+	private AtomicStampedReference<QNode> tail;
+	private QNode[] waiting;
+	private ThreadLocal<QNode> myNode;					// my node while I hold the lock by the slow path
+	private ThreadLocal<Backoff> myBackoff;
+	
+	/**
+	 * default constructor
+	 */
+	public CompositeLock() {
+		this(DEFAULT_SIZE);
+	}
+	
+	/**
+	 * constructor
+	 * @param size
+	 * 				The number of nodes, bounding the number of queued threads
+	 */
+	public CompositeLock(int size) {
+		tail = new AtomicStampedReference<QNode>(null, 0);
+		waiting = new QNode[size];
+		for (int i=0; i<size; i++)
+			waiting[i] = new QNode();
+		myNode = new ThreadLocal<QNode>();
+		myBackoff = new ThreadLocal<Backoff>() {
+			protected Backoff initialValue() {
+				return new Backoff(MIN_BACKOFF, MAX_BACKOFF);
+			}
+		};
+	}
+
+	/**
+	 * Composite Lock locking method
+	 * @param time
+	 * 				The maximum time to wait for the lock to be attained
+	 * @param unit
+	 * 				The time units for the time parameter
+	 * @return
+	 * 				If the lock is attained in the time frame given, returns true.
+	 * 				Otherwise returns false.
+	 * @throws InterruptedException
+	 * 				If interrupted while waiting (the lock is not attained)
+	 */
+	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+		return acquire(unit.toNanos(time), true);
+	}
+	
+	/**
+	 * waits for the lock with no time-out, not responding to interrupts
+	 */
+	public void lock() {
+		try {
+			acquire(NO_TIMEOUT, false);
+		} catch (InterruptedException ie) {
+			// not thrown when not interruptible
+		}
+	}
+	
+	/**
+	 * waits for the lock with no time-out
+	 * @throws InterruptedException
+	 * 				If interrupted while waiting (the lock is not attained)
+	 */
+	public void lockInterruptibly() throws InterruptedException {
+		acquire(NO_TIMEOUT, true);
+	}
+	
+	/**
+	 * attains the lock only if nobody holds or waits for it: released and aborted nodes left at the tail
+	 * are taken out of the queue first, as acquireQNode does, and the lock is then taken by the fast path
+	 */
+	public boolean tryLock() {
+		int[] stamp = {0};
+		QNode currTail = tail.get(stamp);
+		while (currTail != null) {
+			State state = currTail.state.get();
+			if (state != State.RELEASED && state != State.ABORTED)
+				return false;
+			// nobody waits on the tail node, leave its predecessor (if aborted) as the tail
+			QNode pred = (state == State.ABORTED) ? currTail.pred : null;
+			if (!tail.compareAndSet(currTail, pred, stamp[0], nextStamp(stamp[0])))
+				return false;
+			currTail.state.set(State.FREE);
+			currTail = tail.get(stamp);
+		}
+		return fastPathLock();
+	}
+	
+	/**
+	 * Composite Lock unlocking method
+	 */
+	public void unlock() {
+		if (myNode.get() != null)
+			slowPathUnlock();
+		else fastPathUnlock();
+	}
+	
+	/**
+	 * @return	a new condition of this lock; await and signal must be called while holding the lock
+	 */
+	public Condition newCondition() {
+		return new LockCondition(this);
+	}
+	
+	/**
+	 * tries the fast path, then takes a node and waits in the queue, giving up on time-out
+	 * or (if interruptible) on interrupt
+	 * @param patience
+	 * 				The maximum time to wait (nanosecs), NO_TIMEOUT for none
+	 * @return
+	 * 				true if the lock is attained, false on time-out
+	 */
+	private boolean acquire(long patience, boolean interruptible) throws InterruptedException {
+		if (interruptible && Thread.interrupted())
+			throw new InterruptedException();
+		long startTime = System.nanoTime();
+		if (fastPathLock())
+			return true;
+		Backoff backoff = myBackoff.get();
+		backoff.reset();
+		try {
+			QNode node = acquireQNode(backoff, startTime, patience, interruptible);
+			QNode pred = spliceQNode(node, startTime, patience, interruptible);
+			waitForPredecessor(pred, node, startTime, patience, interruptible);
+			// a fast path holder may still be in its critical section
+			while ((tail.getStamp() & FASTPATH) != 0) {
+				if (giveUp(startTime, patience, interruptible)) {
+					slowPathUnlock();
+					throw new TimeoutException();
+				}
+				Thread.onSpinWait();
+			}
+		} catch (TimeoutException e) {
+			if (interruptible && Thread.interrupted())
+				throw new InterruptedException();
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * takes the lock if nobody holds or waits for it
+	 */
+	private boolean fastPathLock() {
+		int[] stamp = {0};
+		QNode qnode = tail.get(stamp);
+		if (qnode != null || (stamp[0] & FASTPATH) != 0)
+			return false;
+		return tail.compareAndSet(null, null, stamp[0], nextStamp(stamp[0]) | FASTPATH);
+	}
+	
+	private void fastPathUnlock() {
+		int[] stamp = {0};
+		QNode qnode;
+		do {
+			qnode = tail.get(stamp);
+		} while (!tail.compareAndSet(qnode, qnode, stamp[0], stamp[0] & ~FASTPATH));
+	}
+	
+	private void slowPathUnlock() {
+		QNode node = myNode.get();
+		myNode.set(null);
+		int[] stamp = {0};
+		QNode currTail = tail.get(stamp);
+		if (currTail == node && tail.compareAndSet(node, null, stamp[0], nextStamp(stamp[0]))) {
+			// nobody is queued behind me, so the queue is empty again and the fast path is open
+			node.state.set(State.FREE);
+		} else node.state.set(State.RELEASED);
+	}
+	
+	/**
+	 * takes a random node, or the tail node if it is released or aborted and so nobody waits on it
+	 */
+	private QNode acquireQNode(Backoff backoff, long startTime, long patience, boolean interruptible) throws TimeoutException {
+		QNode node = waiting[ThreadLocalRandom.current().nextInt(waiting.length)];
+		int[] stamp = {0};
+		while (true) {
+			if (node.state.compareAndSet(State.FREE, State.WAITING))
+				return node;
+			QNode currTail = tail.get(stamp);
+			State state = node.state.get();
+			if ((state == State.ABORTED || state == State.RELEASED) && node == currTail) {
+				// take the node out of the queue, leaving its predecessor (if aborted) as the tail
+				QNode myPred = (state == State.ABORTED) ? node.pred : null;
+				if (tail.compareAndSet(currTail, myPred, stamp[0], nextStamp(stamp[0]))) {
+					node.state.set(State.WAITING);
+					return node;
+				}
+			}
+			backoff.backoff();
+			if (giveUp(startTime, patience, interruptible))
+				throw new TimeoutException();
+		}
+	}
+	
+	/**
+	 * enqueues my node
+	 * @return
+	 * 				my predecessor in the queue
+	 */
+	private QNode spliceQNode(QNode node, long startTime, long patience, boolean interruptible) throws TimeoutException {
+		QNode currTail;
+		int[] stamp = {0};
+		do {
+			currTail = tail.get(stamp);
+			if (giveUp(startTime, patience, interruptible)) {
+				node.state.set(State.FREE);
+				throw new TimeoutException();
+			}
+		} while (!tail.compareAndSet(currTail, node, stamp[0], nextStamp(stamp[0])));
+		return currTail;
+	}
+	
+	/**
+	 * waits for my predecessor to release the lock, freeing aborted predecessors on the way
+	 */
+	private void waitForPredecessor(QNode pred, QNode node, long startTime, long patience, boolean interruptible) throws TimeoutException {
+		if (pred == null) {
+			myNode.set(node);
+			return;
+		}
+		State predState = pred.state.get();
+		while (predState != State.RELEASED) {
+			if (predState == State.ABORTED) {
+				QNode temp = pred;
+				pred = pred.pred;
+				temp.state.set(State.FREE);
+			}
+			if (giveUp(startTime, patience, interruptible)) {
+				node.pred = pred;
+				node.state.set(State.ABORTED);
+				throw new TimeoutException();
+			}
+			predState = pred.state.get();
+		}
+		pred.state.set(State.FREE);
+		myNode.set(node);
+	}
+	
+	/**
+	 * @return	true if the time is up, or if interruptible and interrupted
+	 */
+	private static boolean giveUp(long startTime, long patience, boolean interruptible) {
+		return System.nanoTime() - startTime >= patience
+				|| (interruptible && Thread.currentThread().isInterrupted());
+	}
+	
+	/**
+	 * @return	the stamp for the next tail change, keeping the fast path bit as is
+	 */
+	private static int nextStamp(int stamp) {
+		return ((stamp + 1) & COUNTER) | (stamp & FASTPATH);
+	}
+	
+	/**
+	 * Class QNode for the nodes of the array, with a pointer to the predecessor set on abort
+	 */
+	static class QNode {
+		AtomicReference<State> state = new AtomicReference<State>(State.FREE);
+		QNode pred = null;
+	}
+}
@@ -0,0 +1,96 @@
+package mpp;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Sequential binary min-heap of ints, growing as needed (not thread-safe)
+ */
+public class IntHeap {
+	private int[] heap;
+	private int size = 0;
+	
+	/**
+	 * default constructor
+	 */
+	public IntHeap(){
+		this(16);
+	}
+	
+	/**
+	 * constructor
+	 * @param capacity
+	 * 				initial capacity
+	 */
+	public IntHeap(int capacity){
+		heap = new int[Math.max(1, capacity)];
+	}
+	
+	public void insert(int value){
+		if (size == heap.length)
+			heap = Arrays.copyOf(heap, 2*size);
+		int child = size++;
+		while (child > 0){
+			int parent = (child-1)/2;
+			if (heap[parent] <= value) break;
+			heap[child] = heap[parent];
+			child = parent;
+		}
+		heap[child] = value;
+	}
+	
+	/**
+	 * removes and returns the minimum
+	 * @throws NoSuchElementException
+	 * 				If the heap is empty
+	 */
+	public int deleteMin(){
+		int min = min();
+		int last = heap[--size];
+		int parent = 0;
+		while (true){
+			int child = 2*parent+1;
+			if (child >= size) break;
+			if (child+1 < size && heap[child+1] < heap[child]) child++;
+			if (last <= heap[child]) break;
+			heap[parent] = heap[child];
+			parent = child;
+		}
+		heap[parent] = last;
+		return min;
+	}
+	
+	/**
+	 * @return	the minimum, without removing it
+	 * @throws NoSuchElementException
+	 * 				If the heap is empty
+	 */
+	public int min(){
+		if (size == 0) throw new NoSuchElementException();
+		return heap[0];
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	/**
+	 * @return	the number of elements smaller than the given value
+	 */
+	public int countLess(int value){
+		int count = 0;
+		for (int i=0; i<size; i++)
+			if (heap[i] < value) count++;
+		return count;
+	}
+	
+	public String toString(){
+		int[] sorted = Arrays.copyOf(heap, size);
+		Arrays.sort(sorted);
+		return Arrays.toString(sorted);
+	}
+}
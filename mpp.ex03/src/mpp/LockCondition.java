@@ -0,0 +1,129 @@
+package mpp;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Condition of a lock, built on its lock() and unlock() alone
+ * The waiting threads are kept in a FIFO list that is accessed under the lock only,
+ * and park until signalled.
+ */
+class LockCondition implements Condition {
+	private static final long NO_TIMEOUT = Long.MAX_VALUE;
+	
+	private final Lock lock;
+	private CNode first = null, last = null;
+	
+	/**
+	 * constructor
+	 * @param lock
+	 * 				The lock to release while waiting, and to attain again before returning
+	 */
+	LockCondition(Lock lock) {
+		this.lock = lock;
+	}
+	
+	public void await() throws InterruptedException {
+		doAwait(NO_TIMEOUT, true);
+	}
+	
+	public void awaitUninterruptibly() {
+		try {
+			doAwait(NO_TIMEOUT, false);
+		} catch (InterruptedException ie) {
+			// not thrown when not interruptible
+		}
+	}
+	
+	public long awaitNanos(long nanosTimeout) throws InterruptedException {
+		return doAwait(nanosTimeout, true);
+	}
+	
+	public boolean await(long time, TimeUnit unit) throws InterruptedException {
+		return doAwait(unit.toNanos(time), true) > 0;
+	}
+	
+	public boolean awaitUntil(Date deadline) throws InterruptedException {
+		long millis = deadline.getTime() - System.currentTimeMillis();
+		return doAwait(TimeUnit.MILLISECONDS.toNanos(millis), true) > 0;
+	}
+	
+	public void signal() {
+		CNode node = first;
+		if (node != null) {
+			first = node.next;
+			if (first == null) last = null;
+			node.signalled = true;
+			LockSupport.unpark(node.thread);
+		}
+	}
+	
+	public void signalAll() {
+		while (first != null)
+			signal();
+	}
+	
+	/**
+	 * releases the lock, waits to be signalled, and attains the lock again
+	 * @return
+	 * 				an estimate of the time left (nanosecs), 0 or less if not signalled in time
+	 */
+	private long doAwait(long patience, boolean interruptible) throws InterruptedException {
+		if (interruptible && Thread.interrupted())
+			throw new InterruptedException();
+		CNode node = new CNode(Thread.currentThread());
+		if (last == null) first = node;
+		else last.next = node;
+		last = node;
+		lock.unlock();
+		
+		long startTime = System.nanoTime();
+		long remaining = patience;
+		boolean interrupted = false;
+		while (!node.signalled && remaining > 0) {
+			LockSupport.parkNanos(this, remaining);
+			remaining = patience - (System.nanoTime() - startTime);
+			if (Thread.interrupted()) {
+				interrupted = true;
+				if (interruptible) break;
+			}
+		}
+		lock.lock();
+		if (!node.signalled)
+			remove(node);
+		if (interrupted) {
+			if (interruptible && !node.signalled) throw new InterruptedException();
+			Thread.currentThread().interrupt();
+		}
+		// signalled just as the time was up still counts as signalled
+		return (node.signalled && remaining <= 0) ? 1 : remaining;
+	}
+	
+	private void remove(CNode node) {
+		CNode prev = null;
+		for (CNode curr = first; curr != null; prev = curr, curr = curr.next) {
+			if (curr == node) {
+				if (prev == null) first = curr.next;
+				else prev.next = curr.next;
+				if (last == curr) last = prev;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Class CNode for a thread waiting on a condition
+	 */
+	static class CNode {
+		final Thread thread;
+		volatile boolean signalled = false;
+		CNode next = null;
+		
+		CNode(Thread thread) {
+			this.thread = thread;
+		}
+	}
+}
@@ -1,7 +1,12 @@
 package mpp;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Main class for testing
@@ -15,16 +20,42 @@ public class Main {
 	private static int numOfRuns = 3;								// number of runs to average
 	private static MyThread threads[] = new MyThread[numOfThreads];	// threads array
 	private static int[] timeouts = {20, 100, 500};					// timeouts
+	private static int[] numOfClustersArray = {2, 4};				// simulated clusters for the cohort lock
+	private static int[] oversubscriptionFactors = {1, 2, 8};		// threads per core
+	private static int[] queueSizes = {10, 100, 1000, 10000, 100000, 1000000};	// initial queue sizes
+	private static int[] rangeQueueSizes = {10, 100, 1000};			// initial queue sizes within the range
+	private static int range = 1024;								// priority range of the bounded-range queue
+	private static boolean modulo = false;							// keep the priorities within the range
+	private static int[] multiQueueFactors = {1, 2, 4};				// heaps per thread of the MultiQueue
+	private static int[] multiQueueSizes = {100, 10000};			// initial queue sizes for the MultiQueue
+	private static int rankSampling = 0;							// measure the rank error of every k-th deleteMin (0: never)
+	private static int[] batchSizes = {1, 4, 16, 64, 256, 1024};	// batch sizes
+	private static int batchQueueSize = 10000;						// initial queue size for batches
+	private static int batchSize = 0;								// elements per batch operation (0: single operations)
+	private static int[] replaceQueueSizes = {10, 1000};			// initial queue sizes for replaceMin
+	private static boolean useReplaceMin = false;					// run the cycle as one replaceMin
+	private static int[] combiningThreadCounts = {2, 4, 8, 16, 32, 64};	// thread counts for flat combining
+	private static int[] smallInsertPercents = {0, 25, 50, 75, 100};	// shares of inserts at the head (percents)
+	private static int smallInserts = 0;							// percent of minimums put back as they are
+	private static int[] poolQueueSizes = {1000, 100000, 1000000};	// queue sizes for the heap footprint
+	private static int[] microTimeouts = {10, 20, 50, 100, 200, 500, 1000, 5000, 20000, 100000, 500000};	// timeouts curve (microsecs)
 	private static int[] initPriorities = {10, 20, 30};				// initial priorities in queues
 	private static PriorityQueue testQueue;							// queue
 	private static int N = 20000;									// operations per thread run
 	private static int[] failures = new int[numOfThreads];			// failures array per run
+	private static TOLock testLock;									// lock tested on its own (null: test the queue)
 
 	/**
 	 * main for testing
 	 * @param args
+	 * 				benchmark mode and its arguments, none for the time-out table
 	 */
 	public static void main(String[] args) {		
+		if (args.length > 0){
+			runMode(args);
+			return;
+		}
+		
 		// timing
 		long startTime;
 		long endTime;
@@ -47,11 +78,7 @@ public class Main {
 						// start timing
 						startTime = System.nanoTime();
 
-						for(int i=0; i<numOfThreads; i++) threads[i] = new MyThread(i);
-						for(int i=0; i<numOfThreads; i++) threads[i].start();
-						try{
-							for(int i=0; i<numOfThreads; i++) threads[i].join();
-						} catch (InterruptedException ie) {};
+						runThreads(numOfThreads);
 
 						// end timing
 						endTime = System.nanoTime();
@@ -74,10 +101,490 @@ public class Main {
 		System.out.println("");
 	}
 
+	/**
+	 * runs the benchmark mode given in args[0]
+	 */
+	private static void runMode(String[] args){
+		String mode = args[0];
+		if (mode.equals("alloc")){
+			int timeout = timeouts[timeouts.length-1];
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			System.out.println("structure\t#threads\trunning-time (nanosecs)\toperations/msec\tbytes/operation\ttotal failed operations");
+			System.out.println("=========\t========\t=======================\t===============\t===============\t=======================");
+			// the lock alone, an operation is a tryLock and unlock pair
+			testLock = new TOLock();
+			printAllocRow("TOLock", runThreads(n));
+			testLock = null;
+			// the queues, an operation is a deleteMin and insert pair
+			for (int queueIndex = 0; queueIndex<numOfPriorityQueues; queueIndex++){
+				testQueue = newQueue(queueIndex, initPriorities[0], TimeUnit.MILLISECONDS, timeout);
+				printAllocRow("PriorityQueue"+(queueIndex+1), runThreads(n));
+			}
+		} else if (mode.equals("timeouts")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			for (int queueIndex = 0; queueIndex<numOfPriorityQueues; queueIndex++){
+				System.out.println("PriorityQueue"+(queueIndex+1)+", "+n+" threads:");
+				System.out.println("time-out (microsecs)\trunning-time (nanosecs)\toperations/msec\ttotal failed operations");
+				System.out.println("====================\t=======================\t===============\t=======================");
+				for (int timeout: microTimeouts){
+					testQueue = newQueue(queueIndex, initPriorities[0], TimeUnit.MICROSECONDS, timeout);
+					printCurveRow(timeout+"\t\t\t", runThreads(n));
+				}
+				System.out.println("");
+			}
+		} else if (mode.equals("composite")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			System.out.println("PriorityQueue1, "+n+" threads:");
+			System.out.println("lock\t\ttime-out (microsecs)\trunning-time (nanosecs)\toperations/msec\ttotal failed operations");
+			System.out.println("====\t\t====================\t=======================\t===============\t=======================");
+			for (int timeout: microTimeouts){
+				testQueue = new PriorityQueue1(initPriorities[0], new TOLock(), TimeUnit.MICROSECONDS, timeout);
+				printCurveRow("TOLock\t\t"+timeout+"\t\t\t", runThreads(n));
+				testQueue = new PriorityQueue1(initPriorities[0], new CompositeLock(), TimeUnit.MICROSECONDS, timeout);
+				printCurveRow("CompositeLock\t"+timeout+"\t\t\t", runThreads(n));
+			}
+			System.out.println("");
+			checkCompositeTryLock();
+		} else if (mode.equals("cohort")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : 2*numOfThreads;
+			int timeout = timeouts[timeouts.length-1];
+			System.out.println("PriorityQueue1, "+n+" threads, thread i in cluster i modulo the number of clusters:");
+			System.out.println("lock\t\t\trunning-time (nanosecs)\toperations/msec\ttotal failed operations");
+			System.out.println("====\t\t\t=======================\t===============\t=======================");
+			testQueue = new PriorityQueue1(initPriorities[0], new TOLock(), TimeUnit.MILLISECONDS, timeout);
+			printCurveRow("TOLock\t\t\t", runThreads(n));
+			testQueue = new PriorityQueue1(initPriorities[0], new CompositeLock(), TimeUnit.MILLISECONDS, timeout);
+			printCurveRow("CompositeLock\t\t", runThreads(n));
+			for (int numOfClusters: numOfClustersArray){
+				testQueue = new PriorityQueue1(initPriorities[0], new CohortLock(numOfClusters), TimeUnit.MILLISECONDS, timeout);
+				printCurveRow("CohortLock ("+numOfClusters+" clusters)\t", runThreads(n));
+			}
+		} else if (mode.equals("oversub")){
+			int cores = Runtime.getRuntime().availableProcessors();
+			int timeout = timeouts[timeouts.length-1];
+			System.out.println("PriorityQueue1 over the TOLock on "+cores+" cores, time-out "+timeout+" millisecs:");
+			System.out.println("#threads\trunning-time (nanosecs)\toperations/msec\tcpu time (millisecs)\ttotal failed operations");
+			System.out.println("========\t=======================\t===============\t====================\t=======================");
+			for (int factor: oversubscriptionFactors){
+				int n = factor*cores;
+				testQueue = new PriorityQueue1(initPriorities[0], new TOLock(), TimeUnit.MILLISECONDS, timeout);
+				long time = runThreads(n);
+				long cpuTime = 0;
+				for (MyThread thread: threads)
+					cpuTime += thread.cpuTime;
+				printCurveRow(n+"\t\t", time, (cpuTime/1000000)+"\t\t\t");
+			}
+		} else if (mode.equals("stats")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			int timeout = (args.length > 2) ? Integer.valueOf(args[2]) : 100;
+			System.out.println(n+" threads, time-out "+timeout+" microsecs:");
+			System.out.println("queue\t\tstats\trunning-time (nanosecs)\toperations/msec\ttotal failed operations");
+			System.out.println("=====\t\t=====\t=======================\t===============\t=======================");
+			TOLockStats[] stats = new TOLockStats[numOfPriorityQueues];
+			for (int queueIndex = 0; queueIndex<numOfPriorityQueues; queueIndex++){
+				String name = "PriorityQueue"+(queueIndex+1);
+				// the same run without statistics, for their overhead
+				testQueue = newQueue(queueIndex, initPriorities[0], TimeUnit.MICROSECONDS, timeout);
+				printCurveRow(name+"\toff\t", runThreads(n));
+				stats[queueIndex] = new TOLockStats();
+				stats[queueIndex].register(name);
+				if (queueIndex == 0)
+					testQueue = new PriorityQueue1(initPriorities[0], new TOLock(stats[queueIndex]), TimeUnit.MICROSECONDS, timeout);
+				else testQueue = new PriorityQueue2(initPriorities[0], TimeUnit.MICROSECONDS, timeout, stats[queueIndex]);
+				printCurveRow(name+"\ton\t", runThreads(n));
+			}
+			for (int queueIndex = 0; queueIndex<numOfPriorityQueues; queueIndex++){
+				System.out.println("");
+				System.out.println("PriorityQueue"+(queueIndex+1)+" (MBean mpp:type=TOLockStats,name=PriorityQueue"+(queueIndex+1)+"):");
+				System.out.println(stats[queueIndex]);
+				printHistogram("wait", stats[queueIndex].getWaitHistogram());
+				printHistogram("hold", stats[queueIndex].getHoldHistogram());
+			}
+		} else if (mode.equals("skiplist")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			runSizes(n, new int[] {0, 1, 2}, queueSizes);
+		} else if (mode.equals("heap")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			runSizes(n, new int[] {0, 1, 3}, queueSizes);
+		} else if (mode.equals("range")){
+			range = (args.length > 1) ? Integer.valueOf(args[1]) : range;
+			int n = (args.length > 2) ? Integer.valueOf(args[2]) : numOfThreads;
+			System.out.println("priorities modulo "+range+",");
+			modulo = true;
+			int count = 0;
+			while (count < rangeQueueSizes.length && rangeQueueSizes[count] < range) count++;
+			runSizes(n, new int[] {0, 1, 2, 3, 4}, Arrays.copyOf(rangeQueueSizes, count));
+			modulo = false;
+		} else if (mode.equals("batch")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			int timeout = timeouts[timeouts.length-1];
+			System.out.println(n+" threads, initial queue size "+batchQueueSize+", time-out "+timeout+" millisecs,");
+			System.out.println("each thread removes a batch, adds 100 to each element and inserts the batch back:");
+			System.out.println("queue\t\tbatch\trunning-time (nanosecs)\telements/msec\telements not put back\telements in failed batches");
+			System.out.println("=====\t\t=====\t=======================\t============\t====================\t=========================");
+			for (int size: batchSizes){
+				batchSize = size;
+				for (int queueIndex: new int[] {0, 1}){
+					testQueue = newQueue(queueIndex, batchQueueSize, TimeUnit.MILLISECONDS, timeout);
+					long time = runThreads(n);
+					long lost = 0;
+					for (MyThread thread: threads)
+						lost += thread.lostElements;
+					printCurveRow("PriorityQueue"+(queueIndex+1)+"\t"+size+"\t", time, lost+"\t\t\t");
+				}
+			}
+			batchSize = 0;
+		} else if (mode.equals("replace")){
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			int timeout = timeouts[timeouts.length-1];
+			System.out.println(n+" threads, time-out "+timeout+" millisecs, deleteMin and insert against replaceMin:");
+			System.out.println("queue\t\tsize\tcycle\t\trunning-time (nanosecs)\toperations/msec\tgain\ttotal failed operations");
+			System.out.println("=====\t\t====\t=====\t\t=======================\t===============\t====\t=======================");
+			for (int size: replaceQueueSizes){
+				for (int queueIndex: new int[] {0, 1}){
+					String prefix = "PriorityQueue"+(queueIndex+1)+"\t"+size+"\t";
+					testQueue = newQueue(queueIndex, size, TimeUnit.MILLISECONDS, timeout);
+					long time = runThreads(n);
+					printCurveRow(prefix+"delete+insert\t", time, "\t");
+					testQueue = newQueue(queueIndex, size, TimeUnit.MILLISECONDS, timeout);
+					useReplaceMin = true;
+					long replaceTime = runThreads(n);
+					useReplaceMin = false;
+					printCurveRow(prefix+"replaceMin\t", replaceTime, String.format("%.2f", (double)time/replaceTime)+"\t");
+				}
+			}
+		} else if (mode.equals("combining")){
+			int timeout = timeouts[timeouts.length-1];
+			System.out.println("initial priorities "+initPriorities[0]+", time-out "+timeout+" millisecs:");
+			System.out.println("queue\t\t#threads\trunning-time (nanosecs)\toperations/msec\ttotal failed operations");
+			System.out.println("=====\t\t========\t=======================\t===============\t=======================");
+			for (int n: combiningThreadCounts){
+				for (int queueIndex: new int[] {0, 1, 6}){
+					if (queueIndex == 6) testQueue = new PriorityQueue7(initPriorities[0], TimeUnit.MILLISECONDS, timeout);
+					else testQueue = newQueue(queueIndex, initPriorities[0], TimeUnit.MILLISECONDS, timeout);
+					printCurveRow("PriorityQueue"+(queueIndex+1)+"\t"+n+"\t\t", runThreads(n));
+				}
+			}
+		} else if (mode.equals("elimination")){
+			int[] percents = (args.length > 1) ? new int[] {Integer.valueOf(args[1])} : smallInsertPercents;
+			int n = (args.length > 2) ? Integer.valueOf(args[2]) : numOfThreads;
+			int timeout = timeouts[timeouts.length-1];
+			System.out.println(n+" threads, time-out "+timeout+" millisecs, a share of the minimums put back as they are:");
+			System.out.println("queue\t\tat head\trunning-time (nanosecs)\toperations/msec\thit rate\ttotal failed operations");
+			System.out.println("=====\t\t=======\t=======================\t===============\t========\t=======================");
+			for (int percent: percents){
+				smallInserts = percent;
+				testQueue = newQueue(1, initPriorities[0], TimeUnit.MILLISECONDS, timeout);
+				printCurveRow("PriorityQueue2\t"+percent+"%\t", runThreads(n), "-\t\t");
+				PriorityQueue8 queue = new PriorityQueue8(initPriorities[0], TimeUnit.MILLISECONDS, timeout);
+				testQueue = queue;
+				long time = runThreads(n);
+				String hitRate = String.format("%.1f%%", (double)queue.getEliminations()*100/Math.max(1, queue.getAttempts()));
+				printCurveRow("PriorityQueue8\t"+percent+"%\t", time, hitRate+"\t\t");
+			}
+			smallInserts = 0;
+		} else if (mode.equals("pool")){
+			int timeout = timeouts[timeouts.length-1];
+			int n = (args.length > 1) ? Integer.valueOf(args[1]) : numOfThreads;
+			// load the classes first, so that only the queues are counted
+			for (int queueIndex = 0; queueIndex<numOfPriorityQueues; queueIndex++)
+				for (boolean pooled: new boolean[] {false, true})
+					newPoolQueue(queueIndex, pooled, 0, timeout);
+			System.out.println("heap footprint per queued element:");
+			System.out.println("structure\t\tsize\tbytes/element");
+			System.out.println("=========\t\t====\t=============");
+			for (int size: poolQueueSizes){
+				for (int queueIndex = 0; queueIndex<numOfPriorityQueues; queueIndex++){
+					for (boolean pooled: new boolean[] {false, true}){
+						testQueue = null;
+						long before = usedHeapAfterGC();
+						testQueue = newPoolQueue(queueIndex, pooled, size, timeout);
+						long footprint = usedHeapAfterGC() - before;
+						String name = (pooled ? "Pooled" : "")+"PriorityQueue"+(queueIndex+1);
+						System.out.println(name+(name.length() < 16 ? "\t\t" : "\t")+size+"\t"+String.format("%.1f", (double)footprint/size));
+					}
+				}
+			}
+			testQueue = null;
+			System.out.println("");
+			System.out.println("allocation with initial priorities "+initPriorities[0]+":");
+			System.out.println("structure\t#threads\trunning-time (nanosecs)\toperations/msec\tbytes/operation\ttotal failed operations");
+			System.out.println("=========\t========\t=======================\t===============\t===============\t=======================");
+			for (int queueIndex = 0; queueIndex<numOfPriorityQueues; queueIndex++){
+				for (boolean pooled: new boolean[] {false, true}){
+					testQueue = newPoolQueue(queueIndex, pooled, initPriorities[0], timeout);
+					printAllocRow((pooled ? "Pooled" : "")+"PriorityQueue"+(queueIndex+1), runThreads(n));
+				}
+			}
+		} else if (mode.equals("multiqueue")){
+			int[] factors = (args.length > 1) ? new int[] {Integer.valueOf(args[1])} : multiQueueFactors;
+			int n = (args.length > 2) ? Integer.valueOf(args[2]) : numOfThreads;
+			System.out.println(n+" threads, rank error sampled every 64 deleteMins in a separate run:");
+			System.out.println("queue\t\tc\tsize\trunning-time (nanosecs)\toperations/msec\tavg rank error\tmax rank error\ttotal failed operations");
+			System.out.println("=====\t\t=\t====\t=======================\t===============\t==============\t==============\t=======================");
+			for (int size: multiQueueSizes){
+				testQueue = new PriorityQueue3(size);
+				printCurveRow("PriorityQueue3\t-\t"+size+"\t", runThreads(n), "0\t\t0\t\t");
+				for (int c: factors){
+					testQueue = new PriorityQueue6(size, c*n);
+					long time = runThreads(n);
+					// the same again, with sampling
+					testQueue = new PriorityQueue6(size, c*n);
+					rankSampling = 64;
+					runThreads(n);
+					rankSampling = 0;
+					long samples = 0, sum = 0, max = 0;
+					for (MyThread thread: threads){
+						samples += thread.rankSamples;
+						sum += thread.rankErrorSum;
+						max = Math.max(max, thread.rankErrorMax);
+					}
+					String avg = String.format("%.2f", (double)sum/Math.max(1, samples));
+					printCurveRow("PriorityQueue6\t"+c+"\t"+size+"\t", time, avg+"\t\t"+max+"\t\t");
+				}
+			}
+		} else {
+			printUsage();
+			System.exit(-1);
+		}
+		System.out.println("");
+	}
+
+	/**
+	 * prints the usage message
+	 */
+	private static void printUsage(){
+		System.err.println("usage: Main [mode]");
+		System.err.println("with no mode prints the running-time and failures per initial priorities and time-out");
+		System.err.println("modes:");
+		System.err.println("  alloc [#threads]\tbytes allocated per operation on the TOLock and on each queue");
+		System.err.println("  timeouts [#threads]\tthroughput and failures of each queue for time-outs from 10 microsecs to 500 millisecs");
+		System.err.println("  composite [#threads]\tthe same for PriorityQueue1 over the TOLock and over the CompositeLock,");
+		System.err.println("  \t\t\tand a check of the CompositeLock's tryLock after a contended release");
+		System.err.println("  cohort [#threads]\tthroughput of PriorityQueue1 over the CohortLock with 2 and 4 simulated clusters");
+		System.err.println("  oversub\t\tthroughput and cpu time of PriorityQueue1 over the TOLock at 1, 2 and 8 threads per core");
+		System.err.println("  stats [#threads] [time-out]\tTOLock contention statistics of each queue, time-out in microsecs");
+		System.err.println("  \t\t\t(default: 100)");
+		System.err.println("  skiplist [#threads]\tthroughput of the list queues and of the skiplist queue (PriorityQueue3)");
+		System.err.println("  \t\t\tfor queue sizes from 10 to 1000000");
+		System.err.println("  heap [#threads]\tthe same for the list queues and the fine-grained heap (PriorityQueue4)");
+		System.err.println("  range [R] [#threads]\tthe same for all queues with priorities modulo R (default: 1024), including");
+		System.err.println("  \t\t\tthe bounded-range queue (PriorityQueue5)");
+		System.err.println("  batch [#threads]\tthroughput of the list queues with insertAll and deleteMinBatch for batches");
+		System.err.println("  \t\t\tof 1 to 1024 elements");
+		System.err.println("  replace [#threads]\tthroughput of the list queues with a deleteMin and an insert per cycle");
+		System.err.println("  \t\t\tagainst one replaceMin");
+		System.err.println("  combining\t\tthroughput of the list queues and the flat-combining heap (PriorityQueue7)");
+		System.err.println("  \t\t\tat 2 to 64 threads");
+		System.err.println("  elimination [percent] [#threads]\tthroughput of PriorityQueue2 and of PriorityQueue2 with");
+		System.err.println("  \t\t\tan elimination array (PriorityQueue8), and the share of inserts at the head that were");
+		System.err.println("  \t\t\thanded to a deleteMin, putting back the given percent of the minimums as they are");
+		System.err.println("  \t\t\t(default: 0 to 100)");
+		System.err.println("  pool [#threads]\theap footprint per element and bytes allocated per operation of the list");
+		System.err.println("  \t\t\tqueues with and without a node pool (PooledPriorityQueue1 and PooledPriorityQueue2)");
+		System.err.println("  multiqueue [c] [#threads]\tthroughput and rank error of the MultiQueue (PriorityQueue6) with c heaps");
+		System.err.println("  \t\t\tper thread (default: 1, 2 and 4) against the skiplist queue");
+	}
+
+	/**
+	 * creates a new queue by its index (0 for PriorityQueue1 and so on), the time-out is ignored by lock-free queues
+	 */
+	private static PriorityQueue newQueue(int queueIndex, int initPriority, TimeUnit units, long timeout){
+		if (queueIndex == 0)
+			return new PriorityQueue1(initPriority, units, timeout);
+		else if (queueIndex == 1)
+			return new PriorityQueue2(initPriority, units, timeout);
+		else if (queueIndex == 2)
+			return new PriorityQueue3(initPriority);
+		else if (queueIndex == 3)
+			return new PriorityQueue4(initPriority, units, timeout);
+		else return new PriorityQueue5(initPriority, range);
+	}
+
+	/**
+	 * creates PriorityQueue1 or PriorityQueue2 (by index), over a node pool or not
+	 */
+	private static PriorityQueue newPoolQueue(int queueIndex, boolean pooled, int initPriority, long timeout){
+		if (!pooled)
+			return newQueue(queueIndex, initPriority, TimeUnit.MILLISECONDS, timeout);
+		else if (queueIndex == 0)
+			return new PooledPriorityQueue1(initPriority, TimeUnit.MILLISECONDS, timeout);
+		else return new PooledPriorityQueue2(initPriority, TimeUnit.MILLISECONDS, timeout);
+	}
+
+	/**
+	 * prints the throughput of the given queues (by index) with n threads for each of the given initial queue sizes
+	 */
+	private static void runSizes(int n, int[] queueIndices, int[] sizes){
+		int timeout = timeouts[timeouts.length-1];
+		System.out.println(n+" threads, time-out "+timeout+" millisecs:");
+		System.out.println("queue\t\tsize\trunning-time (nanosecs)\toperations/msec\ttotal failed operations");
+		System.out.println("=====\t\t====\t=======================\t===============\t=======================");
+		for (int size: sizes){
+			for (int queueIndex: queueIndices){
+				testQueue = newQueue(queueIndex, size, TimeUnit.MILLISECONDS, timeout);
+				printCurveRow("PriorityQueue"+(queueIndex+1)+"\t"+size+"\t", runThreads(n));
+			}
+		}
+	}
+
+	/**
+	 * leaves nodes that nobody waits on at the tail of a CompositeLock after a contended release, and checks
+	 * that tryLock attains the lock, which nobody holds:
+	 * a holder queues behind a fast path holder, a waiter times out behind it (leaving an aborted node at the
+	 * tail), and the holder then releases its node while it is not the tail
+	 */
+	private static void checkCompositeTryLock(){
+		CompositeLock lock = new CompositeLock(2);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch waited = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			lock.lock();
+			locked.countDown();
+			try {
+				waited.await();
+			} catch (InterruptedException ie) {
+				// release anyway
+			}
+			lock.unlock();
+		});
+		Thread waiter = new Thread(() -> {
+			// picks a free node and aborts it about every other try
+			for (int i=0; i<20; i++) {
+				try {
+					if (lock.tryLock(100, TimeUnit.MICROSECONDS)) lock.unlock();
+				} catch (InterruptedException ie) {
+					break;
+				}
+			}
+			waited.countDown();
+		});
+		boolean ok;
+		try {
+			lock.lock(); // by the fast path
+			holder.start();
+			Thread.sleep(100); // for the holder to queue up
+			lock.unlock();
+			locked.await();
+			waiter.start();
+			waiter.join();
+			holder.join();
+			ok = lock.tryLock();
+			if (ok) lock.unlock();
+		} catch (InterruptedException ie) {
+			ok = false;
+		}
+		System.out.println("tryLock after a contended release check for CompositeLock: "+(ok ? "OK" : "FAILED"));
+	}
+
+	/**
+	 * prints the given row prefix followed by the throughput and failures of the last run
+	 */
+	private static void printCurveRow(String prefix, long time){
+		printCurveRow(prefix, time, "");
+	}
+
+	/**
+	 * prints the given row prefix followed by the throughput, the given extra columns and the failures of the last run
+	 */
+	private static void printCurveRow(String prefix, long time, String extra){
+		long ops = (long)threads.length*N;
+		int sumOfFailures = sumOfFailures();
+		System.out.println(prefix+time+"\t\t"+(ops*1000000/time)+"\t\t"+extra+
+				sumOfFailures+" ("+((double)sumOfFailures*100/(double)ops)+"%)");
+	}
+
+	/**
+	 * prints the non-empty buckets of a TOLockStats histogram
+	 */
+	private static void printHistogram(String name, long[] histogram){
+		String str = name+" times (nanosecs):";
+		for (int i=0; i<histogram.length; i++)
+			if (histogram[i] > 0)
+				str += " <"+(1L << i)+": "+histogram[i]+",";
+		System.out.println(str.substring(0, str.length()-1));
+	}
+
+	/**
+	 * @return	the total failed operations of the last run
+	 */
+	private static int sumOfFailures(){
+		int sumOfFailures = 0;
+		for (int failure: failures)
+			sumOfFailures += failure;
+		return sumOfFailures;
+	}
+
+	/**
+	 * runs the current test queue (or test lock) with n threads, N operations each
+	 * @return
+	 * 				the running time (nanosecs)
+	 */
+	private static long runThreads(int n){
+		threads = new MyThread[n];
+		failures = new int[n];
+		long startTime = System.nanoTime();
+		for(int i=0; i<n; i++) threads[i] = new MyThread(i);
+		for(int i=0; i<n; i++) threads[i].start();
+		try{
+			for(int i=0; i<n; i++) threads[i].join();
+		} catch (InterruptedException ie) {};
+		return System.nanoTime() - startTime;
+	}
+
+	/**
+	 * prints a row of the allocation table for the threads of the last run
+	 */
+	private static void printAllocRow(String name, long time){
+		long ops = (long)threads.length*N;
+		long bytes = 0;
+		int sumOfFailures = 0;
+		for (MyThread thread: threads){
+			bytes += thread.allocatedBytes;
+			sumOfFailures += thread.getNumOfFailures();
+		}
+		System.out.println(name+(name.length() < 8 ? "\t\t" : "\t")+threads.length+"\t\t"+time+"\t\t"+
+				(ops*1000000/time)+"\t\t"+((double)bytes/ops)+"\t\t"+sumOfFailures);
+	}
+
+	/**
+	 * @return	the heap in use after garbage collection, collecting until it stops shrinking (bytes)
+	 */
+	private static long usedHeapAfterGC(){
+		long used = Long.MAX_VALUE;
+		for (int i=0; i<10; i++){
+			System.gc();
+			long last = used;
+			used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+			if (i >= 3 && used >= last) break;
+		}
+		return used;
+	}
+
+	/**
+	 * @return	the bytes allocated so far by the calling thread
+	 */
+	private static long currentThreadAllocatedBytes(){
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// decreases a priority by 100, as a single function
+	private static IntUnaryOperator decreasePriority = val -> modulo ? (val+100) % range : val+100;
+
 	// MyThread class for testing
 	public static class MyThread extends Thread{
 		final private int id;
 		private int failures = 0;
+		// bytes allocated during the run
+		private long allocatedBytes = 0;
+		// cpu time of the run (nanosecs)
+		private long cpuTime = 0;
+		// sampled deleteMins, and the sum and max of their rank errors
+		private long rankSamples = 0;
+		private long rankErrorSum = 0;
+		private long rankErrorMax = 0;
+		// elements removed by a batch whose insertAll timed out, at most that many not put back
+		private long lostElements = 0;
 
 		public MyThread(int id){
 			this.id = id;
@@ -92,14 +599,41 @@ public class Main {
 		}
 
 		public void run(){
+			ThreadID.set(id);
+			long startBytes = currentThreadAllocatedBytes();
+			if (testLock != null){
+				runLock();
+				allocatedBytes = currentThreadAllocatedBytes() - startBytes;
+				cpuTime = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+				return;
+			}
+			if (batchSize > 0){
+				runBatches();
+				Main.failures[id] = failures;
+				return;
+			}
 			int myCounter = 0;
 			for (; myCounter < N; myCounter++){
 				try {
+					if (useReplaceMin){
+						testQueue.replaceMin(decreasePriority);
+						continue;
+					}
 					int minVal;
 					minVal = testQueue.deleteMin();
+					if (rankSampling > 0 && myCounter % rankSampling == 0 && minVal >= 0){
+						// elements still in the queue that should have come out first
+						int rankError = ((PriorityQueue6)testQueue).countSmaller(minVal);
+						rankSamples++;
+						rankErrorSum += rankError;
+						rankErrorMax = Math.max(rankErrorMax, rankError);
+					}
 
-					// decrease priority by 100
-					minVal += 100;
+					// decrease priority by 100, unless it is put back as it is
+					if (minVal == -1 || smallInserts == 0 || ThreadLocalRandom.current().nextInt(100) >= smallInserts){
+						minVal += 100;
+						if (modulo) minVal %= range;
+					}
 
 					// put back in the queue
 					testQueue.insert(minVal);
@@ -111,6 +645,50 @@ public class Main {
 					System.out.println("Thread "+id+" insert: "+testQueue.toString());
 				}
 			}
+			allocatedBytes = currentThreadAllocatedBytes() - startBytes;
+			cpuTime = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+			Main.failures[id] = failures;
+		}
+
+		// moves N elements through the test queue in batches, the last batch taking only what is left of N
+		private void runBatches(){
+			int[] batch = new int[batchSize];
+			for (int i=0; i < N; i += batchSize){
+				int size = Math.min(batchSize, N - i);
+				int count;
+				try {
+					count = testQueue.deleteMinBatch(size, batch);
+				} catch (TimeoutException e) {
+					// nothing was removed
+					failures += size;
+					continue;
+				}
+				
+				// add 100 to the values (lowering their priorities) and put them back in the queue
+				int[] values = (count == batchSize) ? batch : Arrays.copyOf(batch, count);
+				for (int j=0; j<count; j++)
+					values[j] += 100;
+				try {
+					testQueue.insertAll(values);
+				} catch (TimeoutException e) {
+					// the values inserted before the time-out stay in the queue, the others are lost
+					failures += count;
+					lostElements += count;
+				}
+			}
+		}
+
+		// acquires and releases the test lock N times
+		private void runLock(){
+			for (int i=0; i < N; i++){
+				try {
+					if (testLock.tryLock(timeouts[timeouts.length-1], TimeUnit.MILLISECONDS))
+						testLock.unlock();
+					else failures++;
+				} catch (InterruptedException e) {
+					failures++;
+				}
+			}
 			Main.failures[id] = failures;
 		}
 	}
@@ -121,5 +699,60 @@ public class Main {
 		abstract public int deleteMin() throws TimeoutException;
 		abstract public void insert(int value) throws TimeoutException;
 		abstract public String toString();
+		
+		/**
+		 * Inserts all the given values, by default one at a time (values inserted before a time-out stay in the queue)
+		 * @param values
+		 * 				Values to be inserted to the priority queue
+		 * @throws TimeoutException
+		 * 				If a lock had timed-out
+		 */
+		public void insertAll(int[] values) throws TimeoutException{
+			for (int value: values)
+				insert(value);
+		}
+		
+		/**
+		 * removes up to k minimal elements in increasing order, by default one at a time
+		 * @param k
+		 * 				Maximal number of elements to remove
+		 * @param out
+		 * 				Array of at least k elements to return the removed elements in
+		 * @return
+		 * 				The number of elements removed, less than k if the queue ran empty or a lock had timed-out
+		 * 				after some elements were removed
+		 * @throws TimeoutException
+		 * 				If a lock had timed-out before any element was removed
+		 */
+		public int deleteMinBatch(int k, int[] out) throws TimeoutException{
+			int count = 0;
+			try {
+				while (count < k){
+					int min = deleteMin();
+					if (min == -1) break;
+					out[count++] = min;
+				}
+			} catch (TimeoutException e) {
+				if (count == 0) throw e;
+			}
+			return count;
+		}
+		
+		/**
+		 * replaces the minimum by the given function of it, by default as a deleteMin and an insert
+		 * (then the element is missing from the queue in between, and is lost if the insert times out)
+		 * @param update
+		 * 				Function of the minimum to be inserted instead of it
+		 * @return
+		 * 				The minimum replaced, or -1 if the queue is empty (then nothing is inserted)
+		 * @throws TimeoutException
+		 * 				If a lock had timed-out
+		 */
+		public int replaceMin(IntUnaryOperator update) throws TimeoutException{
+			int min = deleteMin();
+			if (min != -1)
+				insert(update.applyAsInt(min));
+			return min;
+		}
 	}
 }
@@ -0,0 +1,187 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of linked-list nodes kept in parallel primitive arrays instead of objects
+ * A node is an index to its value, the index of the next node and (optionally) a lock word. The arrays grow
+ * by chunks that never move, so nodes can be read without locking while the pool grows. Free nodes are
+ * kept in a lock-free stack linked through their next indices, whose top carries a tag against ABA.
+ * A lock word holds a test-and-set lock and a deleted mark. Free nodes are marked deleted, so that a thread
+ * still holding an index to a recycled node can tell by validating it under its lock.
+ */
+public class NodePool {
+	public static final int NIL = -1;							// no node
+	private static final int LOCKED = 1, DELETED = 2;			// lock word bits
+	private static final int CHUNK_BITS = 12;					// 4096 nodes per chunk
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+	private static final int SPINS = 64;						// iterations to spin on a lock before yielding
+	private static final long INDEX_MASK = (1L << 32)-1;
+	
+	private volatile Chunk[] chunks = new Chunk[0];
+	private final boolean withLocks;
+	
+	// top of the free stack: a tag in the upper half, a node in the lower half
+	private AtomicLong free = new AtomicLong(NIL & INDEX_MASK);
+	
+	/**
+	 * constructor
+	 * @param capacity
+	 * 				initial number of nodes
+	 * @param withLocks
+	 * 				whether nodes have lock words
+	 */
+	public NodePool(int capacity, boolean withLocks){
+		this.withLocks = withLocks;
+		while (capacity() < capacity)
+			addChunk();
+	}
+	
+	/**
+	 * takes a free node, growing the pool if there is none
+	 * the node of a pool with locks is still marked deleted, and may still be locked by a thread that held
+	 * an index to it before it was freed
+	 * @param value
+	 * 				value of the node
+	 * @return	the node, whose next node is NIL
+	 */
+	public int allocate(int value){
+		while (true){
+			long top = free.get();
+			int node = (int)top;
+			if (node == NIL){
+				growIfEmpty();
+				continue;
+			}
+			int nextFree = next(node);
+			if (free.compareAndSet(top, tagged(top, nextFree))){
+				setValue(node, value);
+				setNext(node, NIL);
+				return node;
+			}
+		}
+	}
+	
+	/**
+	 * returns a node that no longer is in the list to the pool (unlocked and marked deleted if it has a lock)
+	 */
+	public void free(int node){
+		long top;
+		do {
+			top = free.get();
+			setNext(node, (int)top);
+		} while (!free.compareAndSet(top, tagged(top, node)));
+	}
+	
+	/**
+	 * adds a chunk of free nodes, unless another thread has just added one
+	 */
+	private synchronized void growIfEmpty(){
+		if ((int)free.get() == NIL)
+			addChunk();
+	}
+	
+	/**
+	 * adds a chunk of free nodes
+	 */
+	private synchronized void addChunk(){
+		Chunk[] newChunks = java.util.Arrays.copyOf(chunks, chunks.length+1);
+		Chunk chunk = new Chunk(withLocks);
+		newChunks[chunks.length] = chunk;
+		int first = chunks.length*CHUNK_SIZE;
+		for (int i=0; i<CHUNK_SIZE-1; i++)
+			chunk.next[i] = first+i+1;
+		if (withLocks)
+			for (int i=0; i<CHUNK_SIZE; i++)
+				chunk.states.set(i, DELETED);
+		chunks = newChunks;
+		// push the chunk as a whole
+		long top;
+		do {
+			top = free.get();
+			chunk.next[CHUNK_SIZE-1] = (int)top;
+		} while (!free.compareAndSet(top, tagged(top, first)));
+	}
+	
+	// the next top of the free stack
+	private static long tagged(long top, int node){
+		return ((top >>> 32)+1) << 32 | (node & INDEX_MASK);
+	}
+	
+	/**
+	 * @return	the number of nodes in the pool, free or not
+	 */
+	public int capacity(){
+		return chunks.length*CHUNK_SIZE;
+	}
+	
+	public int value(int node){
+		return chunks[node >>> CHUNK_BITS].values[node & CHUNK_MASK];
+	}
+	
+	public void setValue(int node, int value){
+		chunks[node >>> CHUNK_BITS].values[node & CHUNK_MASK] = value;
+	}
+	
+	public int next(int node){
+		return chunks[node >>> CHUNK_BITS].next[node & CHUNK_MASK];
+	}
+	
+	public void setNext(int node, int next){
+		chunks[node >>> CHUNK_BITS].next[node & CHUNK_MASK] = next;
+	}
+	
+	/**
+	 * tries to lock a node, spinning and then yielding until the given deadline
+	 * @param deadline
+	 * 				System.nanoTime() to give up at
+	 * @return	true if the node was locked
+	 */
+	public boolean tryLock(int node, long deadline){
+		AtomicIntegerArray states = chunks[node >>> CHUNK_BITS].states;
+		int i = node & CHUNK_MASK;
+		int spins = 0;
+		while (true){
+			int state = states.get(i);
+			if ((state & LOCKED) == 0 && states.compareAndSet(i, state, state | LOCKED)) return true;
+			if (System.nanoTime() - deadline >= 0) return false;
+			if (++spins < SPINS) Thread.onSpinWait();
+			else Thread.yield();
+		}
+	}
+	
+	/**
+	 * unlocks a node that I locked
+	 */
+	public void unlock(int node){
+		AtomicIntegerArray states = chunks[node >>> CHUNK_BITS].states;
+		int i = node & CHUNK_MASK;
+		states.set(i, states.get(i) & ~LOCKED);
+	}
+	
+	public boolean isDeleted(int node){
+		return (chunks[node >>> CHUNK_BITS].states.get(node & CHUNK_MASK) & DELETED) != 0;
+	}
+	
+	/**
+	 * marks a node that I locked as deleted or not
+	 */
+	public void setDeleted(int node, boolean deleted){
+		chunks[node >>> CHUNK_BITS].states.set(node & CHUNK_MASK, LOCKED | (deleted ? DELETED : 0));
+	}
+	
+	/**
+	 * class for a chunk of nodes
+	 */
+	private static class Chunk{
+		private final int[] values = new int[CHUNK_SIZE];
+		private final int[] next = new int[CHUNK_SIZE];
+		private final AtomicIntegerArray states;
+		
+		public Chunk(boolean withLocks){
+			states = withLocks ? new AtomicIntegerArray(CHUNK_SIZE) : null;
+		}
+	}
+}
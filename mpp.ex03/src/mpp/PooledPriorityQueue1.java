@@ -0,0 +1,164 @@
+package mpp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import mpp.Main.*;
+
+/**
+ * PriorityQueue1 over a node pool: the same linked list under one single lock, with its elements kept in
+ * primitive arrays and recycled after deleteMin, so that the queue operations do not allocate objects
+ */
+public class PooledPriorityQueue1 extends PriorityQueue{
+	private static final int NIL = NodePool.NIL;
+	
+	// time-out parameters
+	private TimeUnit units;
+	private long timeout;
+	
+	// lock, elements and linked list head
+	private Lock lock;
+	private NodePool pool;
+	private int head = NIL;
+	
+	/**
+	 * constructor
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the TOLock
+	 */
+	public PooledPriorityQueue1(TimeUnit units, long timeout){
+		this(0, new TOLock(), units, timeout);
+	}
+	
+	/**
+	 * constructor with initial queue priorities
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the TOLock
+	 */
+	public PooledPriorityQueue1(int initialPriorites, TimeUnit units, long timeout){
+		this(initialPriorites, new TOLock(), units, timeout);
+	}
+	
+	/**
+	 * constructor with initial queue priorities and the queue-lock
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param lock
+	 * 				the queue-lock, used through tryLock with a time-out and unlock only
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the queue-lock
+	 */
+	public PooledPriorityQueue1(int initialPriorites, Lock lock, TimeUnit units, long timeout){
+		this.lock = lock;
+		pool = new NodePool(initialPriorites, false);
+		int prev = NIL;
+		for (int i=1; i<=initialPriorites; i++){
+			int node = pool.allocate(i);
+			if (prev == NIL) head = node;
+			else pool.setNext(prev, node);
+			prev = node;
+		}
+		
+		this.timeout = timeout;
+		this.units = units;
+	}
+	
+	/**
+	 * Inserts a new element by its priority
+	 * @param val
+	 * 			Value to be inserted to the priority queue
+	 * @throws TimeoutException
+	 * 			If the queue-lock had timed-out
+	 */
+	public void insert(int val) throws TimeoutException{
+		// take the element before locking
+		int node = pool.allocate(val);
+		boolean locked = false;
+		try{
+			locked = lock.tryLock(timeout, units);
+			if (locked){
+				if (head == NIL || pool.value(head) >= val){
+					// the new element is the minimum
+					pool.setNext(node, head);
+					head = node;
+				} else {
+					// find the new element's priority and insert it to the queue
+					int prev = head;
+					int here = pool.next(prev);
+					while (here != NIL && pool.value(here) < val){
+						prev = here;
+						here = pool.next(here);
+					}
+					pool.setNext(node, here);
+					pool.setNext(prev, node);
+				}
+			} else
+				throw new TimeoutException();
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during insert");
+		} finally {
+			// release lock if attained, or else give the element back
+			if (locked) lock.unlock();
+			else pool.free(node);
+		}
+	}
+	
+	/**
+	 * removes and returns the first element
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			The minimum value in the priority queue
+	 * @throws TimeoutException
+	 * 			If the queue-lock had timed-out
+	 */
+	public int deleteMin() throws TimeoutException{
+		int min = -1;
+		int node = NIL;
+		boolean locked = false;
+		try{
+			locked = lock.tryLock(timeout, units);
+			if (locked){
+				// if the queue is empty
+				if (head != NIL){
+					// remove first element
+					node = head;
+					min = pool.value(node);
+					head = pool.next(node);
+				}
+			} else 
+				throw new TimeoutException();
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during deleteMin or queue is empty");
+		} finally {
+			// release lock if attained
+			if (locked) lock.unlock();
+		}
+		// recycle the removed element
+		if (node != NIL) pool.free(node);
+		return min;
+	}
+	
+	/**
+	 * @return	the number of elements the pool holds, queued or free
+	 */
+	public int capacity(){
+		return pool.capacity();
+	}
+	
+	public String toString(){
+		String str = "";
+		for (int node = head; node != NIL; node = pool.next(node))
+			str += pool.value(node)+", ";
+		return "["+(str.isEmpty() ? "" : str.substring(0, str.length()-2))+"]";
+	}
+}
@@ -0,0 +1,259 @@
+package mpp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import mpp.Main.*;
+
+/**
+ * PriorityQueue2 over a node pool: the same linked list with a lock per element, with its elements and their
+ * locks kept in primitive arrays and recycled after deleteMin, so that the queue operations do not allocate
+ * objects. A recycled element may still be reached through an index read before it was removed, so every
+ * decision is validated under the element locks against values and the deleted marks, never against
+ * the identity of an element alone.
+ */
+public class PooledPriorityQueue2 extends PriorityQueue{
+	private static final int EMPTY = -1;
+	private static final int NIL = NodePool.NIL;
+	
+	// time-out (nanosecs)
+	private long timeout;
+	
+	// elements and linked list
+	private NodePool pool;
+	private volatile int head; // "queue is empty" when its value is EMPTY
+	
+	/**
+	 * constructor
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the element locks
+	 */
+	public PooledPriorityQueue2(TimeUnit units, long timeout){
+		this(0, units, timeout);
+	}
+	
+	/**
+	 * constructor with initial queue priorities
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the element locks
+	 */
+	public PooledPriorityQueue2(int initialPriorites, TimeUnit units, long timeout){
+		pool = new NodePool(initialPriorites+1, true);
+		int first = initialNode(EMPTY);
+		int prev = first;
+		for (int i=1; i<=initialPriorites; i++){
+			if (pool.value(first) == EMPTY){
+				pool.setValue(first, i);
+			} else {
+				int node = initialNode(i);
+				pool.setNext(prev, node);
+				prev = node;
+			}
+		}
+		head = first;
+		
+		this.timeout = units.toNanos(timeout);
+	}
+	
+	/**
+	 * Inserts a new element in its place
+	 * @param val
+	 * 				Value to be inserted to the priority queue
+	 * @throws TimeoutException
+	 * 				If an element lock had timed-out
+	 */
+	public void insert(int val) throws TimeoutException{
+		int newNode = NIL;
+		boolean linked = false;
+		try{
+			// loop until you succeed
+			while (true){
+				int headTry = head;
+				
+				// case #1: the queue is empty
+				if (pool.value(headTry) == EMPTY){
+					if (!lock(headTry)) throw new TimeoutException();
+					if (headTry == head && pool.value(headTry) == EMPTY){
+						// this is still the first element
+						pool.setValue(headTry, val);
+						pool.unlock(headTry);
+						return;
+					}
+					// try again
+					pool.unlock(headTry);
+					continue;
+				}
+				
+				// case #2: this is the new minimum
+				if (pool.value(headTry) >= val){
+					if (!lock(headTry)) throw new TimeoutException();
+					int headVal = pool.value(headTry);
+					if (headTry == head && headVal != EMPTY && headVal >= val){
+						if (newNode == NIL) newNode = newNode(val);
+						pool.setNext(newNode, headTry);
+						head = newNode;
+						linked = true;
+						pool.unlock(headTry);
+						return;
+					}
+					// try again
+					pool.unlock(headTry);
+					continue;
+				}
+				
+				// case #3: this element should be inserted somewhere along the queue
+				if (newNode == NIL) newNode = newNode(val);
+				
+				// get the position to insert the new element into
+				int prev = headTry;
+				int next = pool.next(prev);
+				boolean stale = false;
+				while (next != NIL && pool.value(next) < val){
+					// values only grow along the queue, so I went through a recycled element
+					if (pool.value(next) < pool.value(prev)){
+						stale = true;
+						break;
+					}
+					prev = next;
+					next = pool.next(prev);
+				}
+				if (stale) continue;
+				
+				// attain locks
+				if (!lock(prev)) throw new TimeoutException();
+				if (next != NIL && !lock(next)){
+					pool.unlock(prev);
+					throw new TimeoutException();
+				}
+				
+				// check that the conditions still apply
+				boolean valid = validate(prev, next, val);
+				if (valid){
+					// insert new element in the middle
+					pool.setNext(newNode, next);
+					pool.setNext(prev, newNode);
+					linked = true;
+				}
+				pool.unlock(prev);
+				if (next != NIL) pool.unlock(next);
+				if (valid) return;
+			}
+		} finally {
+			if (newNode != NIL){
+				if (linked) pool.unlock(newNode);
+				else {
+					// give the new element back
+					pool.setDeleted(newNode, true);
+					pool.unlock(newNode);
+					pool.free(newNode);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * takes a new element from the pool, locked by me
+	 * @throws TimeoutException
+	 * 				If a thread that held its index before it was freed holds its lock too long
+	 */
+	private int newNode(int val) throws TimeoutException{
+		int node = pool.allocate(val);
+		if (!lock(node)){
+			pool.free(node);
+			throw new TimeoutException();
+		}
+		pool.setDeleted(node, false);
+		return node;
+	}
+	
+	/**
+	 * takes a new element from the pool while the queue is not shared yet
+	 */
+	private int initialNode(int val){
+		int node = pool.allocate(val);
+		pool.tryLock(node, System.nanoTime());
+		pool.setDeleted(node, false);
+		pool.unlock(node);
+		return node;
+	}
+	
+	/**
+	 * locks an element within the time-out
+	 */
+	private boolean lock(int node){
+		return pool.tryLock(node, System.nanoTime()+timeout);
+	}
+	
+	/**
+	 * validation before actual insertion that prev and next are still adjacent elements of the queue, between
+	 * which the value belongs
+	 */
+	private boolean validate(int prev, int next, int val){
+		int prevVal = pool.value(prev);
+		if (pool.isDeleted(prev) || prevVal == EMPTY || prevVal >= val) return false;
+		if (next == NIL) return pool.next(prev) == NIL;
+		else return pool.next(prev) == next && !pool.isDeleted(next) && pool.value(next) >= val;
+	}
+	
+	/**
+	 * removes and returns the first element
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			The minimum value in the priority queue
+	 * @throws TimeoutException
+	 * 			If the head-element lock had timed-out
+	 */
+	public int deleteMin() throws TimeoutException{
+		while (true){
+			// attain head's lock
+			int headTry = head;
+			if (!lock(headTry)) throw new TimeoutException();
+			// check that indeed head was locked
+			if (headTry != head){
+				pool.unlock(headTry);
+				continue;
+			}
+			
+			int min = pool.value(headTry);
+			int next = pool.next(headTry);
+			if (min == EMPTY){
+				// queue is empty
+				pool.unlock(headTry);
+				return -1;
+			} else if (next == NIL){
+				// queue has only one element, mark "queue is empty" again
+				pool.setValue(headTry, EMPTY);
+				pool.unlock(headTry);
+				return min;
+			} else {
+				// mark current head as deleted before actual deleting, and recycle it
+				pool.setDeleted(headTry, true);
+				head = next;
+				pool.unlock(headTry);
+				pool.free(headTry);
+				return min;
+			}
+		}
+	}
+	
+	/**
+	 * @return	the number of elements the pool holds, queued or free
+	 */
+	public int capacity(){
+		return pool.capacity();
+	}
+	
+	public String toString(){
+		String str = "";
+		int node = head;
+		if (pool.value(node) != EMPTY)
+			for (; node != NIL; node = pool.next(node))
+				str += pool.value(node)+", ";
+		return "["+(str.isEmpty() ? "" : str.substring(0, str.length()-2))+"]";
+	}
+}
@@ -1,12 +1,15 @@
 package mpp;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntUnaryOperator;
 import mpp.Main.*;
 
 /**
  * Priority Queue implemented in a linked list
- * Each operation is protected with one single TOLock
+ * Each operation is protected with one single TOLock (or any other lock supporting tryLock with a time-out)
  */
 public class PriorityQueue1 extends PriorityQueue{
 	// time-out parameters
@@ -14,21 +17,18 @@ public class PriorityQueue1 extends PriorityQueue{
 	private long timeout;
 	
 	// lock and linked list head
-	private TOLock lock;
+	private Lock lock;
 	private Elem1 head = null;
 	
 	/**
 	 * constructor
 	 * @param units
-	 * 				time units for timeout
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
 	 * @param timeout
 	 * 				time-out in given units for the TOLock
 	 */
 	public PriorityQueue1(TimeUnit units, long timeout){
-		lock = new TOLock();
-		
-		this.timeout = timeout;
-		this.units = units;
+		this(0, new TOLock(), units, timeout);
 	}
 	
 	/**
@@ -36,12 +36,27 @@ public class PriorityQueue1 extends PriorityQueue{
 	 * @param initialPriorites
 	 * 				initial priorities bound to be inserted into the queue starting from 1
 	 * @param units
-	 * 				time units for timeout
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
 	 * @param timeout
 	 * 				time-out in given units for the TOLock
 	 */
 	public PriorityQueue1(int initialPriorites, TimeUnit units, long timeout){
-		lock = new TOLock();
+		this(initialPriorites, new TOLock(), units, timeout);
+	}
+	
+	/**
+	 * constructor with initial queue priorities and the queue-lock
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param lock
+	 * 				the queue-lock, used through tryLock with a time-out and unlock only
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the queue-lock
+	 */
+	public PriorityQueue1(int initialPriorites, Lock lock, TimeUnit units, long timeout){
+		this.lock = lock;
 		Elem1 prevElem = head;
 		
 		for (int i=1; i<=initialPriorites; i++){
@@ -67,9 +82,10 @@ public class PriorityQueue1 extends PriorityQueue{
 	 * 			If the queue-lock had timed-out
 	 */
 	public void insert(int val) throws TimeoutException{
+		boolean locked = false;
 		// try to obtain lock
 		try{
-			boolean locked = lock.tryLock(timeout, units);
+			locked = lock.tryLock(timeout, units);
 			if (locked){
 				// lock attained, insert value by its priority
 				Elem1 newElem = new Elem1(val);
@@ -97,8 +113,8 @@ public class PriorityQueue1 extends PriorityQueue{
 			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
 			System.out.println(">> Thread "+id+" interrupted during insert");
 		} finally {
-			// release lock anyway
-			lock.unlock();
+			// release lock if attained
+			if (locked) lock.unlock();
 		}
 	}
 	
@@ -128,8 +144,134 @@ public class PriorityQueue1 extends PriorityQueue{
 			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
 			System.out.println(">> Thread "+id+" interrupted during deleteMin or queue is empty");
 		} finally {
-			// release lock anyway
-			lock.unlock();
+			// release lock if attained
+			if (locked) lock.unlock();
+		}
+		return min;
+	}
+	
+	/**
+	 * Inserts all the given values in one pass over the queue, under a single lock acquisition
+	 * @param values
+	 * 			Values to be inserted to the priority queue
+	 * @throws TimeoutException
+	 * 			If the queue-lock had timed-out (then none is inserted)
+	 */
+	public void insertAll(int[] values) throws TimeoutException{
+		if (values.length == 0) return;
+		// build the sorted chain of new elements before locking
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		Elem1 first = new Elem1(sorted[0]);
+		Elem1 last = first;
+		for (int i=1; i<sorted.length; i++){
+			last.next = new Elem1(sorted[i]);
+			last = last.next;
+		}
+		
+		boolean locked = false;
+		try{
+			locked = lock.tryLock(timeout, units);
+			if (locked){
+				// lock attained, merge the chain into the queue
+				Elem1 prev = null;
+				Elem1 here = head;
+				Elem1 newElem = first;
+				while (newElem != null){
+					while (here != null && here.value < newElem.value){
+						prev = here;
+						here = here.next;
+					}
+					Elem1 nextNew = newElem.next;
+					if (prev == null) head = newElem;
+					else prev.next = newElem;
+					if (here == null) break; // the rest of the chain goes at the end as it is
+					newElem.next = here;
+					prev = newElem;
+					newElem = nextNew;
+				}
+			} else
+				throw new TimeoutException();
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during insertAll");
+		} finally {
+			// release lock if attained
+			if (locked) lock.unlock();
+		}
+	}
+	
+	/**
+	 * removes up to k first elements under a single lock acquisition
+	 * @param k
+	 * 			Maximal number of elements to remove
+	 * @param out
+	 * 			Array of at least k elements to return the removed elements in
+	 * @return
+	 * 			The number of elements removed, less than k if the queue ran empty
+	 * @throws TimeoutException
+	 * 			If the queue-lock had timed-out
+	 */
+	public int deleteMinBatch(int k, int[] out) throws TimeoutException{
+		int count = 0;
+		boolean locked = false;
+		try{
+			locked = lock.tryLock(timeout, units);
+			if (locked){
+				while (count < k && head != null){
+					out[count++] = head.value;
+					head = head.next;
+				}
+			} else 
+				throw new TimeoutException();
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during deleteMinBatch");
+		} finally {
+			// release lock if attained
+			if (locked) lock.unlock();
+		}
+		return count;
+	}
+	
+	/**
+	 * replaces the first element by the given function of it under a single lock acquisition,
+	 * moving the element to its new place
+	 * @param update
+	 * 			Function of the minimum to be inserted instead of it
+	 * @return
+	 * 			The minimum replaced, or -1 if the queue is empty
+	 * @throws TimeoutException
+	 * 			If the queue-lock had timed-out
+	 */
+	public int replaceMin(IntUnaryOperator update) throws TimeoutException{
+		int min = -1;
+		boolean locked = false;
+		try{
+			locked = lock.tryLock(timeout, units);
+			if (locked){
+				if (head != null){
+					Elem1 elem = head;
+					min = elem.value;
+					elem.value = update.applyAsInt(min);
+					if (elem.next != null && elem.next.value < elem.value){
+						// unlink the element and insert it by its new priority
+						head = elem.next;
+						Elem1 prev = head;
+						while (prev.next != null && prev.next.value < elem.value)
+							prev = prev.next;
+						elem.next = prev.next;
+						prev.next = elem;
+					}
+				}
+			} else 
+				throw new TimeoutException();
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during replaceMin");
+		} finally {
+			// release lock if attained
+			if (locked) lock.unlock();
 		}
 		return min;
 	}
@@ -160,4 +302,4 @@ public class PriorityQueue1 extends PriorityQueue{
 			return this.value+"";
 		}
 	}
-}
\ No newline at end of file
+}
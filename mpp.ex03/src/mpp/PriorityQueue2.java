@@ -1,7 +1,9 @@
 package mpp;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.IntUnaryOperator;
 import mpp.Main.*;
 
 public class PriorityQueue2 extends PriorityQueue{
@@ -14,18 +16,20 @@ public class PriorityQueue2 extends PriorityQueue{
 	// lock and linked list
 	// making the head volatile saves many "empty" locks, that is locks that immediately are unlocked,
 	// and so although the lock's AtomicReference synchronizes the cache, a volatile is added.
-	private volatile Elem2 head = new Elem2(EMPTY); // "queue is empty"
+	private volatile Elem2 head; // "queue is empty" when its value is EMPTY
+	
+	// statistics shared by the element locks, or null
+	private TOLockStats stats;
 	
 	/**
 	 * constructor
 	 * @param units
-	 * 				time units for timeout
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
 	 * @param timeout
 	 * 				time-out in given units for the TOLock
 	 */
 	public PriorityQueue2(TimeUnit units, long timeout){
-		this.timeout = timeout;
-		this.units = units;
+		this(0, units, timeout, null);
 	}
 	
 	/**
@@ -33,18 +37,35 @@ public class PriorityQueue2 extends PriorityQueue{
 	 * @param initialPriorites
 	 * 				initial priorities bound to be inserted into the queue starting from 1
 	 * @param units
-	 * 				time units for timeout
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
 	 * @param timeout
 	 * 				time-out in given units for the TOLock
 	 */
 	public PriorityQueue2(int initialPriorites, TimeUnit units, long timeout){
+		this(initialPriorites, units, timeout, null);
+	}
+	
+	/**
+	 * constructor with initial queue priorities and lock statistics
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the TOLock
+	 * @param stats
+	 * 				statistics for all the element locks to record into, or null for none
+	 */
+	public PriorityQueue2(int initialPriorites, TimeUnit units, long timeout, TOLockStats stats){
+		this.stats = stats;
+		head = new Elem2(EMPTY, stats);
 		Elem2 prevElem = head;
 		
 		for (int i=1; i<=initialPriorites; i++){
 			if (head.value == EMPTY){
 				head.value = i;
 			} else {
-				Elem2 elem = new Elem2(i); 
+				Elem2 elem = new Elem2(i, stats); 
 				prevElem.next = elem;
 				prevElem = prevElem.next;
 			}
@@ -89,6 +110,7 @@ public class PriorityQueue2 extends PriorityQueue{
 						} else {
 							// try again
 							head.lock.unlock();
+							headLocked = false;
 							continue;
 						}
 					} else throw new TimeoutException();
@@ -107,15 +129,20 @@ public class PriorityQueue2 extends PriorityQueue{
 						// this is indeed head as before
 						if (!head.isDeleted && head.value >= val){
 							// this is still the new minimum
-							newElem = new Elem2(val);
-							imLocked = newElem.lock.tryLock(timeout, units);
+							if (newElem == null){
+								newElem = new Elem2(val, stats);
+								imLocked = newElem.lock.tryLock(timeout, units);
+							}
 							newElem.next = head;
 							head = newElem;
-							head.next.lock.unlock();
+							// the old head is no longer the head, and the new one is freed as my element
+							newElem.next.lock.unlock();
+							headLocked = false;
 							break; // stop looping
 						} else {
 							// try again
 							head.lock.unlock();
+							headLocked = false;
 							continue;
 						}
 					} else throw new TimeoutException();
@@ -123,9 +150,11 @@ public class PriorityQueue2 extends PriorityQueue{
 				
 				// case #3: this element should be inserted somewhere along the queue
 				else {
-					// create new element to be inserted
-					newElem = new Elem2(val);
-					imLocked = newElem.lock.tryLock(timeout, units); // should always succeed
+					// create new element to be inserted, once for all retries
+					if (newElem == null){
+						newElem = new Elem2(val, stats);
+						imLocked = newElem.lock.tryLock(timeout, units); // should always succeed
+					}
 					
 					// get the position to insert the new element into
 					prevElem = head;
@@ -142,12 +171,13 @@ public class PriorityQueue2 extends PriorityQueue{
 						nextLocked = nextElem.lock.tryLock(timeout, units);
 						if (!nextLocked){
 							prevElem.lock.unlock();
+							prevLocked = false;
 							throw new TimeoutException();
 						}
 					}
 					
 					// check that the conditions still apply
-					if (validate(prevElem,nextElem)){
+					if (validate(prevElem, nextElem, val)){
 						// insert new element in the middle
 						newElem.next = nextElem;
 						prevElem.next = newElem;
@@ -156,6 +186,8 @@ public class PriorityQueue2 extends PriorityQueue{
 						// try again
 						prevElem.lock.unlock();
 						if (nextElem != null) nextElem.lock.unlock();
+						prevLocked = false;
+						nextLocked = false;
 						continue;
 					}
 				}
@@ -165,7 +197,7 @@ public class PriorityQueue2 extends PriorityQueue{
 			System.out.println(">> Thread "+id+" interrupted during insert");
 		} finally {
 			// anyway free all elements that I locked (also on success)
-			head.lock.unlock();		// free head that I locked
+			if (headLocked) head.lock.unlock();		// free head that I locked
 			if (imLocked) newElem.lock.unlock();	// free the new element I created
 			if (prevLocked) prevElem.lock.unlock();	// free prev that I locked
 			if (nextLocked) nextElem.lock.unlock();	// free next that I locked
@@ -175,11 +207,92 @@ public class PriorityQueue2 extends PriorityQueue{
 	/**
 	 * validation before actual insertion that the status before lock was not changed
 	 */
-	private boolean validate(Elem2 prevElem, Elem2 nextElem){
+	private boolean validate(Elem2 prevElem, Elem2 nextElem, int val){
+		// an emptied head is no element to insert after, and replaceMin may have raised the value of the head
+		// (an equal value goes after it)
+		if (prevElem.value == EMPTY || prevElem.value > val) return false;
 		if (nextElem == null) return (!prevElem.isDeleted && prevElem.next == null);
 		else return (!prevElem.isDeleted && prevElem.next == nextElem && !nextElem.isDeleted);
 	}
 	
+	/**
+	 * Inserts all the given values in one pass over the queue: the values are sorted, and the search for the
+	 * place of each value starts from the element inserted before it instead of from the head
+	 * (values inserted before a time-out stay in the queue)
+	 * @param values
+	 * 				Values to be inserted to the priority queue
+	 * @throws TimeoutException
+	 * 				If an element lock had timed-out
+	 */
+	public void insertAll(int[] values) throws TimeoutException{
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		Elem2 last = null;	// the element I inserted last
+		try{
+			for (int val: sorted){
+				Elem2 elem = (last != null) ? insertAfter(last, val) : null;
+				// the last element was deleted meanwhile, search from the head
+				if (elem == null) elem = insertAfter(head, val);
+				// the value belongs at the head
+				if (elem == null) insert(val);
+				last = elem;
+			}
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during insertAll");
+		}
+	}
+	
+	/**
+	 * Inserts a new element somewhere after the given element, searching from it as in case #3 of insert
+	 * @return
+	 * 				The new element, or null if the value is smaller than the given element or the given
+	 * 				element is no longer in the queue
+	 */
+	private Elem2 insertAfter(Elem2 start, int val) throws TimeoutException, InterruptedException{
+		Elem2 prevElem=null, nextElem=null;
+		boolean prevLocked=false, nextLocked=false;
+		try{
+			while (true){
+				if (start.isDeleted || start.value == EMPTY || start.value > val) return null;
+				
+				// get the position to insert the new element into
+				prevElem = start;
+				nextElem = prevElem.next;
+				while (nextElem != null && nextElem.value < val){
+					prevElem = nextElem;
+					nextElem = prevElem.next;
+				}
+				
+				// attain locks
+				prevLocked = prevElem.lock.tryLock(timeout, units);
+				if (!prevLocked) throw new TimeoutException();
+				if (nextElem != null){
+					nextLocked = nextElem.lock.tryLock(timeout, units);
+					if (!nextLocked) throw new TimeoutException();
+				}
+				
+				// check that the conditions still apply
+				if (validate(prevElem, nextElem, val)){
+					// allocated only once it is sure to be linked
+					Elem2 newElem = new Elem2(val, stats);
+					newElem.next = nextElem;
+					prevElem.next = newElem;
+					return newElem;
+				}
+				
+				// try again
+				prevElem.lock.unlock();
+				prevLocked = false;
+				if (nextLocked) nextElem.lock.unlock();
+				nextLocked = false;
+			}
+		} finally {
+			if (prevLocked) prevElem.lock.unlock();
+			if (nextLocked) nextElem.lock.unlock();
+		}
+	}
+	
 	/**
 	 * removes and returns the first element
 	 * if the queue is empty returns -1
@@ -227,6 +340,7 @@ public class PriorityQueue2 extends PriorityQueue{
 						Elem2 old = head;
 						head = head.next;
 						old.lock.unlock();
+						locked = false;
 						return min;
 					}
 				} else throw new TimeoutException();
@@ -235,12 +349,164 @@ public class PriorityQueue2 extends PriorityQueue{
 			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
 			System.out.println(">> Thread "+id+" interrupted during deleteMin");
 		} finally {
-			// anyway free the head that I locked
-			head.lock.unlock();
+			// free the head if I still hold it
+			if (locked) head.lock.unlock();
 		}
 		return min;
 	}
 	
+	/**
+	 * removes up to k first elements, locking the next element before giving up the head (hand-over-hand)
+	 * @param k
+	 * 			Maximal number of elements to remove
+	 * @param out
+	 * 			Array of at least k elements to return the removed elements in
+	 * @return
+	 * 			The number of elements removed, less than k if the queue ran empty or an element lock had
+	 * 			timed-out after some elements were removed
+	 * @throws TimeoutException
+	 * 			If the head-element lock had timed-out before any element was removed
+	 */
+	public int deleteMinBatch(int k, int[] out) throws TimeoutException{
+		int count = 0;
+		Elem2 locked = null;	// the head, once I hold its lock
+		try{
+			// attain head's lock
+			while (locked == null){
+				Elem2 headTry = head;
+				if (!headTry.lock.tryLock(timeout, units)) throw new TimeoutException();
+				// check that indeed head was locked
+				if (headTry != head) headTry.lock.unlock();
+				else locked = headTry;
+			}
+			
+			while (count < k && head.value != EMPTY){
+				if (head.next == null){
+					// queue has only one element, mark "queue is empty" again
+					out[count++] = head.value;
+					head.value = EMPTY;
+					break;
+				}
+				// lock the next element, it becomes the head
+				Elem2 next = head.next;
+				if (!next.lock.tryLock(timeout, units)){
+					if (count == 0) throw new TimeoutException();
+					break;
+				}
+				out[count++] = head.value;
+				head.isDeleted = true;
+				Elem2 old = head;
+				head = next;
+				locked = next;
+				old.lock.unlock();
+			}
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during deleteMinBatch");
+		} finally {
+			// free the head that I locked
+			if (locked != null) locked.lock.unlock();
+		}
+		return count;
+	}
+	
+	/**
+	 * replaces the first element by the given function of it, updating the head in place if it stays the minimum
+	 * and otherwise unlinking it as deleteMin does and linking the same element back as insert does
+	 * @param update
+	 * 			Function of the minimum to be inserted instead of it
+	 * @return
+	 * 			The minimum replaced, or -1 if the queue is empty
+	 * @throws TimeoutException
+	 * 			If the head-element lock had timed-out
+	 */
+	public int replaceMin(IntUnaryOperator update) throws TimeoutException{
+		int min = -1;
+		Elem2 elem = null;	// the head, once I hold its lock
+		try{
+			// attain head's lock
+			while (elem == null){
+				Elem2 headTry = head;
+				if (!headTry.lock.tryLock(timeout, units)) throw new TimeoutException();
+				// check that indeed head was locked
+				if (headTry != head) headTry.lock.unlock();
+				else elem = headTry;
+			}
+			if (elem.value == EMPTY) return min; // queue is empty
+			
+			min = elem.value;
+			int val = update.applyAsInt(min);
+			if (elem.next == null || elem.next.value >= val){
+				// still the minimum
+				elem.value = val;
+				return min;
+			}
+			// unlink the element, I keep holding its lock until it is linked again
+			head = elem.next;
+			elem.value = val;
+			relink(elem);
+		} catch (InterruptedException ie){
+			int id = ((MyThread)Thread.currentThread()).getMyThreadID();
+			System.out.println(">> Thread "+id+" interrupted during replaceMin");
+		} finally {
+			if (elem != null) elem.lock.unlock();
+		}
+		return min;
+	}
+	
+	/**
+	 * links an unlinked element that I hold back by its value, as insert does but without time-outs
+	 * (the element is already out of the queue and must not get lost)
+	 */
+	private void relink(Elem2 elem){
+		int val = elem.value;
+		while (true){
+			Elem2 headTry = head;
+			
+			// the element is the new minimum (or the queue was emptied meanwhile)
+			if (headTry.value == EMPTY || headTry.value >= val){
+				headTry.lock.lock();
+				try{
+					if (headTry == head && (head.value == EMPTY || head.value >= val)){
+						elem.next = (head.value == EMPTY) ? null : head;
+						head = elem;
+						return;
+					}
+				} finally {
+					headTry.lock.unlock();
+				}
+				continue;
+			}
+			
+			// get the position to link the element into
+			Elem2 prevElem = headTry;
+			Elem2 nextElem = prevElem.next;
+			while (nextElem != null && nextElem.value < val){
+				prevElem = nextElem;
+				nextElem = prevElem.next;
+			}
+			prevElem.lock.lock();
+			if (nextElem != null) nextElem.lock.lock();
+			try{
+				if (validate(prevElem, nextElem, val)){
+					elem.next = nextElem;
+					prevElem.next = elem;
+					return;
+				}
+			} finally {
+				prevElem.lock.unlock();
+				if (nextElem != null) nextElem.lock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * @return	the value of the head as seen without locking, or -1 if the queue seems empty
+	 */
+	public int peekMin(){
+		return head.value;
+	}
+	
 	public String toString(){
 		String str = "";
 		Elem2 curr = head;
@@ -259,14 +525,15 @@ public class PriorityQueue2 extends PriorityQueue{
 		private Elem2 next = null;
 		private int value;
 		private boolean isDeleted = false;
-		private TOLock lock = new TOLock();
+		private TOLock lock;
 
-		public Elem2(int value){
+		public Elem2(int value, TOLockStats stats){
 			this.value = value;
+			this.lock = new TOLock(stats);
 		}
 
 		public String toString(){
 			return super.toString()+(isDeleted?",DELETED":"");
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,213 @@
+package mpp;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import mpp.Main.*;
+
+/**
+ * Priority Queue implemented in a lock-free skiplist
+ * deleteMin claims the first unclaimed element by a flag of its own (logical deletion) and then marks its
+ * references, so that it is unlinked by the next traversals passing it (physical deletion).
+ * Equal priorities are told apart by a random tie-breaker in the low half of the element's key;
+ * an insert whose key is already taken retries with another one.
+ * There are no locks, so no operation ever times out.
+ */
+public class PriorityQueue3 extends PriorityQueue{
+	private static final int MAX_LEVEL = 24;	// enough for millions of elements
+	
+	// sentinels
+	private final Node head = new Node(Long.MIN_VALUE, 0, MAX_LEVEL);
+	private final Node tail = new Node(Long.MAX_VALUE, 0, MAX_LEVEL);
+	
+	/**
+	 * constructor
+	 */
+	public PriorityQueue3(){
+		for (int level=0; level<=MAX_LEVEL; level++)
+			head.next[level].set(tail, false);
+	}
+	
+	/**
+	 * constructor with initial queue priorities
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 */
+	public PriorityQueue3(int initialPriorites){
+		this();
+		for (int i=1; i<=initialPriorites; i++)
+			insert(i);
+	}
+	
+	/**
+	 * Inserts a new element by its priority
+	 * @param val
+	 * 			Value to be inserted to the priority queue
+	 */
+	public void insert(int val){
+		Node node = new Node(0, val, randomLevel());
+		do {
+			node.key = key(val);
+		} while (!add(node));
+	}
+	
+	/**
+	 * removes and returns the first element
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			The minimum value in the priority queue
+	 */
+	public int deleteMin(){
+		Node curr = head.next[0].getReference();
+		while (curr != tail){
+			if (!curr.claimed.get() && curr.claimed.compareAndSet(false, true)){
+				remove(curr);
+				return curr.value;
+			}
+			curr = curr.next[0].getReference();
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return	a key for the given priority with a random tie-breaker, strictly between the sentinel keys
+	 */
+	private static long key(int val){
+		int tie;
+		do {
+			tie = ThreadLocalRandom.current().nextInt();
+		} while (tie == 0 || tie == -1);
+		return ((long)val << 32) | (tie & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * @return	a random level, level i with probability 2^-(i+1)
+	 */
+	private static int randomLevel(){
+		return Math.min(MAX_LEVEL, Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt()));
+	}
+	
+	/**
+	 * links the node bottom-up
+	 * @return
+	 * 			false if its key is already in the list
+	 */
+	private boolean add(Node newNode){
+		int topLevel = newNode.topLevel;
+		Node[] preds = new Node[MAX_LEVEL+1];
+		Node[] succs = new Node[MAX_LEVEL+1];
+		while (true){
+			if (find(newNode.key, preds, succs))
+				return false;
+			for (int level=0; level<=topLevel; level++)
+				newNode.next[level].set(succs[level], false);
+			Node pred = preds[0];
+			Node succ = succs[0];
+			if (!pred.next[0].compareAndSet(succ, newNode, false, false))
+				continue;
+			// the node is in the queue, link the upper levels
+			for (int level=1; level<=topLevel; level++){
+				while (true){
+					pred = preds[level];
+					succ = succs[level];
+					boolean[] marked = {false};
+					Node next = newNode.next[level].get(marked);
+					if (marked[0])
+						return true; // already deleted, stop linking
+					if (next != succ && !newNode.next[level].compareAndSet(next, succ, false, false))
+						continue;
+					if (pred.next[level].compareAndSet(succ, newNode, false, false))
+						break;
+					find(newNode.key, preds, succs);
+				}
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * marks the references of a node claimed by deleteMin top-down, and unlinks it
+	 */
+	private void remove(Node node){
+		boolean[] marked = {false};
+		for (int level=node.topLevel; level>=0; level--){
+			Node succ = node.next[level].get(marked);
+			while (!marked[0]){
+				node.next[level].attemptMark(succ, true);
+				succ = node.next[level].get(marked);
+			}
+		}
+		find(node.key, new Node[MAX_LEVEL+1], new Node[MAX_LEVEL+1]);
+	}
+	
+	/**
+	 * finds the predecessors and successors of the key in every level, unlinking marked nodes on the way
+	 * @return
+	 * 			true if the key is in the list
+	 */
+	private boolean find(long key, Node[] preds, Node[] succs){
+		boolean[] marked = {false};
+		Node pred, curr = null, succ;
+		retry:
+		while (true){
+			pred = head;
+			for (int level=MAX_LEVEL; level>=0; level--){
+				curr = pred.next[level].getReference();
+				while (true){
+					succ = curr.next[level].get(marked);
+					while (marked[0]){
+						if (!pred.next[level].compareAndSet(curr, succ, false, false))
+							continue retry;
+						curr = succ;
+						succ = curr.next[level].get(marked);
+					}
+					if (curr.key < key){
+						pred = curr;
+						curr = succ;
+					} else break;
+				}
+				preds[level] = pred;
+				succs[level] = curr;
+			}
+			return (curr.key == key);
+		}
+	}
+	
+	public String toString(){
+		String str = "";
+		Node curr = head.next[0].getReference();
+		while (curr != tail){
+			if (!curr.claimed.get())
+				str += curr.value+", ";
+			curr = curr.next[0].getReference();
+		}
+		str = "["+((str.length()==0)?"":str.substring(0, str.length()-2))+"]";
+		return str;
+	}
+	
+	/**
+	 * class for PriorityQueue3 elements
+	 */
+	private static class Node{
+		private long key;
+		private final int value;
+		private final int topLevel;
+		private final AtomicMarkableReference<Node>[] next;
+		// set by the deleteMin that takes the element
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public Node(long key, int value, int topLevel){
+			this.key = key;
+			this.value = value;
+			this.topLevel = topLevel;
+			next = (AtomicMarkableReference<Node>[]) new AtomicMarkableReference[topLevel+1];
+			for (int level=0; level<=topLevel; level++)
+				next[level] = new AtomicMarkableReference<Node>(null, false);
+		}
+
+		public String toString(){
+			return this.value+"";
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package mpp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import mpp.Main.*;
+
+/**
+ * Priority Queue implemented in a binary heap with a lock per slot (fine-grained heap)
+ * The heap lock protects only the next free slot: an insert takes the next slot and sifts its element up,
+ * and a deleteMin takes the root and sifts the last element down from it, both holding at most two slot
+ * locks at a time (always locking parents before children), so that they proceed in parallel.
+ * An element being sifted up is tagged busy with its inserter's id, and its inserter follows it up the heap
+ * if others moved it. Values, tags and owners are kept in int arrays, one set per level of the heap: a level
+ * is added under the heap lock when the heap first grows into it and is never moved, so that slots are
+ * accessed under their own locks alone. Only the heap lock (a TOLock) times out.
+ */
+public class PriorityQueue4 extends PriorityQueue{
+	private static final int ROOT = 1;
+	private static final int MAX_LEVELS = 31;						// slots are positive ints
+	private static final int EMPTY = 0, AVAILABLE = 1, BUSY = 2;	// slot tags
+	private static final int NO_ONE = 0;							// owner of a slot that is not busy
+	private static final int SPINS = 64;							// iterations to spin on a slot before yielding
+	
+	// time-out parameters
+	private TimeUnit units;
+	private long timeout;
+	
+	// heap lock and the next free slot it protects (levels are added under it)
+	private TOLock heapLock = new TOLock();
+	private int next = ROOT;
+	
+	// the slots by level, level l holding slots 2^l to 2^(l+1)-1
+	private AtomicReferenceArray<Level> levels = new AtomicReferenceArray<Level>(MAX_LEVELS);
+	
+	/**
+	 * constructor
+	 * @param units
+	 * 				time units for timeout
+	 * @param timeout
+	 * 				time-out in given units for the heap lock
+	 */
+	public PriorityQueue4(TimeUnit units, long timeout){
+		this(0, units, timeout);
+	}
+	
+	/**
+	 * constructor with initial queue priorities
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param units
+	 * 				time units for timeout
+	 * @param timeout
+	 * 				time-out in given units for the heap lock
+	 */
+	public PriorityQueue4(int initialPriorites, TimeUnit units, long timeout){
+		// ascending values are already in heap order
+		for (int i=1; i<=initialPriorites; i++){
+			addLevel(next);
+			set(next, i, AVAILABLE, NO_ONE);
+			next++;
+		}
+		
+		this.timeout = timeout;
+		this.units = units;
+	}
+	
+	/**
+	 * Inserts a new element by its priority
+	 * @param val
+	 * 			Value to be inserted to the priority queue
+	 * @throws TimeoutException
+	 * 			If the heap lock had timed-out
+	 */
+	public void insert(int val) throws TimeoutException{
+		int me = ThreadID.get()+1;
+		if (!lockHeap()) throw new TimeoutException();
+		int child = next++;
+		addLevel(child);
+		lockSlot(child);
+		set(child, val, BUSY, me);
+		heapLock.unlock();
+		unlockSlot(child);
+		
+		// sift up
+		int waits = 0;
+		while (child > ROOT){
+			int parent = child/2;
+			lockSlot(parent);
+			lockSlot(child);
+			int oldChild = child;
+			if (tag(parent) == AVAILABLE && isOwner(child, me)){
+				if (value(child) < value(parent)){
+					swap(child, parent);
+					child = parent;
+				} else {
+					// in place
+					setTag(child, AVAILABLE, NO_ONE);
+					unlockSlot(oldChild);
+					unlockSlot(parent);
+					return;
+				}
+			} else if (!isOwner(child, me)){
+				// my element was moved up
+				child = parent;
+			}
+			unlockSlot(oldChild);
+			unlockSlot(parent);
+			// the parent is busy with an element being sifted up by another thread
+			if (child == oldChild){
+				if (++waits < SPINS) Thread.onSpinWait();
+				else Thread.yield();
+			} else waits = 0;
+		}
+		lockSlot(ROOT);
+		if (isOwner(ROOT, me))
+			setTag(ROOT, AVAILABLE, NO_ONE);
+		unlockSlot(ROOT);
+	}
+	
+	/**
+	 * removes and returns the first element
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			The minimum value in the priority queue
+	 * @throws TimeoutException
+	 * 			If the heap lock had timed-out
+	 */
+	public int deleteMin() throws TimeoutException{
+		if (!lockHeap()) throw new TimeoutException();
+		if (next == ROOT){
+			heapLock.unlock();
+			return -1;
+		}
+		int bottom = --next;
+		lockSlot(ROOT);
+		if (bottom != ROOT) lockSlot(bottom);
+		heapLock.unlock();
+		int min = value(ROOT);
+		setTag(ROOT, EMPTY, NO_ONE);
+		if (bottom == ROOT){
+			unlockSlot(ROOT);
+			return min;
+		}
+		swap(bottom, ROOT);
+		unlockSlot(bottom);
+		// the last element is sifted down from the root here, even if its insert is still sifting it up
+		// (its inserter will not find it on its way up)
+		setTag(ROOT, AVAILABLE, NO_ONE);
+		
+		// sift down
+		int parent = ROOT;
+		while (parent < 1 << (MAX_LEVELS-1)){
+			int left = 2*parent;
+			int right = left+1;
+			int child;
+			// both children are in the same level, and a level not added yet holds no elements
+			if (levels.get(level(left)) == null) break;
+			lockSlot(left);
+			lockSlot(right);
+			if (tag(left) == EMPTY){
+				unlockSlot(right);
+				unlockSlot(left);
+				break;
+			} else if (tag(right) == EMPTY || value(left) < value(right)){
+				unlockSlot(right);
+				child = left;
+			} else {
+				unlockSlot(left);
+				child = right;
+			}
+			if (value(child) < value(parent)){
+				swap(parent, child);
+				unlockSlot(parent);
+				parent = child;
+			} else {
+				unlockSlot(child);
+				break;
+			}
+		}
+		unlockSlot(parent);
+		return min;
+	}
+	
+	/**
+	 * adds the level of the given slot if it is not there yet (called under the heap lock, or on construction)
+	 */
+	private void addLevel(int slot){
+		int level = level(slot);
+		if (levels.get(level) == null)
+			levels.set(level, new Level(1 << level));
+	}
+	
+	/**
+	 * @return	the level of the given slot, the root being at level 0
+	 */
+	private static int level(int slot){
+		return 31 - Integer.numberOfLeadingZeros(slot);
+	}
+	
+	/**
+	 * @return	the slots of the level of the given slot
+	 */
+	private Level slots(int slot){
+		return levels.get(level(slot));
+	}
+	
+	/**
+	 * @return	false if the heap lock had timed-out (or the thread was interrupted)
+	 */
+	private boolean lockHeap(){
+		try{
+			return heapLock.tryLock(timeout, units);
+		} catch (InterruptedException ie){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	private void lockSlot(int slot){
+		Level slots = slots(slot);
+		int i = slot - slots.first;
+		int spins = 0;
+		while (slots.locks.get(i) != 0 || !slots.locks.compareAndSet(i, 0, 1)){
+			if (++spins < SPINS) Thread.onSpinWait();
+			else Thread.yield();
+		}
+	}
+	
+	private void unlockSlot(int slot){
+		Level slots = slots(slot);
+		slots.locks.set(slot - slots.first, 0);
+	}
+	
+	private int value(int slot){
+		Level slots = slots(slot);
+		return slots.values[slot - slots.first];
+	}
+	
+	private int tag(int slot){
+		Level slots = slots(slot);
+		return slots.tags[slot - slots.first];
+	}
+	
+	private void set(int slot, int value, int tag, int owner){
+		Level slots = slots(slot);
+		int i = slot - slots.first;
+		slots.values[i] = value;
+		slots.tags[i] = tag;
+		slots.owners[i] = owner;
+	}
+	
+	private void setTag(int slot, int tag, int owner){
+		Level slots = slots(slot);
+		int i = slot - slots.first;
+		slots.tags[i] = tag;
+		slots.owners[i] = owner;
+	}
+	
+	private boolean isOwner(int slot, int me){
+		Level slots = slots(slot);
+		int i = slot - slots.first;
+		return slots.tags[i] == BUSY && slots.owners[i] == me;
+	}
+	
+	private void swap(int i, int j){
+		Level si = slots(i), sj = slots(j);
+		i -= si.first;
+		j -= sj.first;
+		int value = si.values[i], tag = si.tags[i], owner = si.owners[i];
+		si.values[i] = sj.values[j];
+		si.tags[i] = sj.tags[j];
+		si.owners[i] = sj.owners[j];
+		sj.values[j] = value;
+		sj.tags[j] = tag;
+		sj.owners[j] = owner;
+	}
+	
+	public String toString(){
+		String str = "";
+		for (int level=0; level<MAX_LEVELS && levels.get(level) != null; level++){
+			Level slots = levels.get(level);
+			for (int i=0; i<slots.first; i++)
+				if (slots.tags[i] != EMPTY)
+					str += slots.values[i]+", ";
+		}
+		str = "["+((str.length()==0)?"":str.substring(0, str.length()-2))+"]";
+		return str;
+	}
+	
+	/**
+	 * class for the slots of one level of the heap, with a lock per slot
+	 */
+	private static class Level{
+		private final int first;	// the first slot of the level, also the number of its slots
+		private final int[] values;
+		private final int[] tags;
+		private final int[] owners;
+		private final AtomicIntegerArray locks;
+		
+		public Level(int first){
+			this.first = first;
+			values = new int[first];
+			tags = new int[first];
+			owners = new int[first];
+			locks = new AtomicIntegerArray(first);
+		}
+	}
+}
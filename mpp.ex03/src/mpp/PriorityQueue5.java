@@ -0,0 +1,108 @@
+package mpp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import mpp.Main.*;
+
+/**
+ * Priority Queue for a bounded range of priorities 0..R-1, implemented in a tree of counters
+ * Every priority has a bin at a leaf of a complete binary tree, and every inner node counts the elements
+ * in its left subtree. An insert adds to its bin and increments the counters bottom-up on the way to the root;
+ * a deleteMin goes down from the root, to the left if it could decrement the counter and to the right otherwise,
+ * and takes from the bin it reaches. Both take O(log R) steps with no element traversal.
+ * The elements are the priorities themselves, so a bin only counts its elements.
+ * The queue is quiescently consistent: a deleteMin concurrent with inserts may miss a new minimum, and may find
+ * an empty bin (returning -1) while another deleteMin takes the last element on its path.
+ * There are no locks, so no operation ever times out.
+ */
+public class PriorityQueue5 extends PriorityQueue{
+	private static final int ROOT = 1;
+	
+	// number of leaves (range of priorities), a power of 2
+	private int range;
+	// counters[i] counts the elements in the left subtree of inner node i (1..range-1)
+	private AtomicIntegerArray counters;
+	// bins[p] counts the elements of priority p
+	private AtomicIntegerArray bins;
+	
+	/**
+	 * constructor
+	 * @param range
+	 * 				the priorities are 0..range-1 (rounded up to a power of 2)
+	 */
+	public PriorityQueue5(int range){
+		this(0, range);
+	}
+	
+	/**
+	 * constructor with initial queue priorities
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param range
+	 * 				the priorities are 0..range-1 (rounded up to a power of 2)
+	 */
+	public PriorityQueue5(int initialPriorites, int range){
+		this.range = 1;
+		while (this.range < range) this.range *= 2;
+		counters = new AtomicIntegerArray(this.range);
+		bins = new AtomicIntegerArray(this.range);
+		for (int i=1; i<=initialPriorites; i++)
+			insert(i);
+	}
+	
+	/**
+	 * Inserts a new element by its priority
+	 * @param val
+	 * 			Value to be inserted to the priority queue, within the range
+	 */
+	public void insert(int val){
+		if (val < 0 || val >= range)
+			throw new IllegalArgumentException("priority "+val+" out of range 0.."+(range-1));
+		bins.getAndIncrement(val);
+		int node = range+val;
+		while (node > ROOT){
+			int parent = node/2;
+			if (node == 2*parent)
+				counters.getAndIncrement(parent);
+			node = parent;
+		}
+	}
+	
+	/**
+	 * removes and returns the first element
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			The minimum value in the priority queue
+	 */
+	public int deleteMin(){
+		int node = ROOT;
+		while (node < range){
+			if (boundedGetAndDecrement(counters, node) > 0)
+				node = 2*node;
+			else node = 2*node+1;
+		}
+		int val = node-range;
+		return (boundedGetAndDecrement(bins, val) > 0) ? val : -1;
+	}
+	
+	/**
+	 * decrements the i-th element, unless it is 0
+	 * @return
+	 * 			the previous value
+	 */
+	private static int boundedGetAndDecrement(AtomicIntegerArray array, int i){
+		while (true){
+			int value = array.get(i);
+			if (value == 0 || array.compareAndSet(i, value, value-1))
+				return value;
+		}
+	}
+	
+	public String toString(){
+		String str = "";
+		for (int val=0; val<range; val++)
+			for (int i=bins.get(val); i>0; i--)
+				str += val+", ";
+		str = "["+((str.length()==0)?"":str.substring(0, str.length()-2))+"]";
+		return str;
+	}
+}
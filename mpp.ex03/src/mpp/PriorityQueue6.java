@@ -0,0 +1,146 @@
+package mpp;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import mpp.Main.*;
+
+/**
+ * Relaxed priority queue implemented in several sequential heaps (MultiQueue)
+ * An insert goes to a random heap, and a deleteMin takes from the better of two random heaps, comparing
+ * their minimums as last published by their holders. Every heap is behind a try-lock: a thread that finds
+ * a heap locked just picks another, so no thread ever waits for a lock and no operation times out.
+ * deleteMin may return an element other than the minimum; with c*P heaps for P threads, the expected rank
+ * of the returned element is O(c*P). It returns -1 only if all heaps were seen empty.
+ */
+public class PriorityQueue6 extends PriorityQueue{
+	private static final long EMPTY = Long.MAX_VALUE;	// published minimum of an empty heap
+	
+	private Slot[] heaps;
+	
+	/**
+	 * constructor
+	 * @param numOfHeaps
+	 * 				number of heaps, usually a small constant c times the number of threads
+	 */
+	public PriorityQueue6(int numOfHeaps){
+		this(0, numOfHeaps);
+	}
+	
+	/**
+	 * constructor with initial queue priorities
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param numOfHeaps
+	 * 				number of heaps, usually a small constant c times the number of threads
+	 */
+	public PriorityQueue6(int initialPriorites, int numOfHeaps){
+		heaps = new Slot[Math.max(1, numOfHeaps)];
+		for (int i=0; i<heaps.length; i++)
+			heaps[i] = new Slot();
+		for (int i=1; i<=initialPriorites; i++)
+			insert(i);
+	}
+	
+	/**
+	 * Inserts a new element into a random heap
+	 * @param val
+	 * 			Value to be inserted to the priority queue
+	 */
+	public void insert(int val){
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (true){
+			Slot slot = heaps[random.nextInt(heaps.length)];
+			if (slot.tryLock()){
+				slot.heap.insert(val);
+				slot.publish();
+				slot.unlock();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * removes and returns the minimum of the better of two random heaps
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			A value close to the minimum in the priority queue
+	 */
+	public int deleteMin(){
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (true){
+			Slot first = heaps[random.nextInt(heaps.length)];
+			Slot second = heaps[random.nextInt(heaps.length)];
+			Slot slot = (second.min < first.min) ? second : first;
+			if (slot.min == EMPTY){
+				// both seem empty, look for any other
+				slot = nonEmpty(random.nextInt(heaps.length));
+				if (slot == null) return -1;
+			}
+			if (slot.tryLock()){
+				if (slot.heap.isEmpty()){
+					slot.unlock();
+					continue;
+				}
+				int min = slot.heap.deleteMin();
+				slot.publish();
+				slot.unlock();
+				return min;
+			}
+		}
+	}
+	
+	/**
+	 * @return	the first heap from the given index on (cyclically) that seems non-empty, or null if none
+	 */
+	private Slot nonEmpty(int from){
+		for (int i=0; i<heaps.length; i++){
+			Slot slot = heaps[(from+i) % heaps.length];
+			if (slot.min != EMPTY) return slot;
+		}
+		return null;
+	}
+	
+	/**
+	 * counts the elements smaller than the given value, locking one heap at a time (for measuring the rank
+	 * error of deleteMin; exact only when there are no concurrent operations)
+	 */
+	public int countSmaller(int value){
+		int count = 0;
+		for (Slot slot: heaps){
+			while (!slot.tryLock())
+				Thread.onSpinWait();
+			count += slot.heap.countLess(value);
+			slot.unlock();
+		}
+		return count;
+	}
+	
+	public String toString(){
+		String str = "";
+		for (Slot slot: heaps)
+			str += slot.heap.toString()+" ";
+		return str.trim();
+	}
+	
+	/**
+	 * class for a heap, its try-lock and its published minimum
+	 */
+	private static class Slot{
+		private final AtomicBoolean lock = new AtomicBoolean(false);
+		private final IntHeap heap = new IntHeap();
+		private volatile long min = EMPTY;
+		
+		public boolean tryLock(){
+			return !lock.get() && lock.compareAndSet(false, true);
+		}
+		
+		public void unlock(){
+			lock.set(false);
+		}
+		
+		// called under the lock after every change
+		public void publish(){
+			min = heap.isEmpty() ? EMPTY : heap.min();
+		}
+	}
+}
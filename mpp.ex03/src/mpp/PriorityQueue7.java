@@ -0,0 +1,158 @@
+package mpp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import mpp.Main.*;
+
+/**
+ * Priority Queue implemented in a sequential heap with flat combining
+ * Every thread publishes its operation in a publication record of its own and waits for it to be done.
+ * Whichever thread gets the combiner lock (a try-lock, no thread ever waits for it) applies all pending
+ * operations in one pass over the records, so that the heap is changed by a single thread at a time
+ * without passing the lock from thread to thread. A record still pending at its time-out is withdrawn,
+ * and its operation throws TimeoutException; once taken by a combiner, an operation completes.
+ */
+public class PriorityQueue7 extends PriorityQueue{
+	private static final int IDLE = 0, PENDING = 1, TAKEN = 2, DONE = 3;	// record states
+	private static final int INSERT = 0, DELETE_MIN = 1;					// operations
+	private static final int SPINS = 64;	// iterations to spin on my record before yielding
+	
+	// time-out parameters
+	private TimeUnit units;
+	private long timeout;
+	
+	// combiner lock and the heap it protects
+	private AtomicBoolean combinerLock = new AtomicBoolean(false);
+	private IntHeap heap;
+	
+	// publication records, added at the head on the first operation of each thread and never removed
+	private AtomicReference<Record> records = new AtomicReference<Record>(null);
+	private ThreadLocal<Record> myRecord = new ThreadLocal<Record>(){
+		protected Record initialValue(){
+			Record record = new Record();
+			do {
+				record.next = records.get();
+			} while (!records.compareAndSet(record.next, record));
+			return record;
+		}
+	};
+	
+	/**
+	 * constructor
+	 * @param units
+	 * 				time units for timeout
+	 * @param timeout
+	 * 				time-out in given units for a pending operation
+	 */
+	public PriorityQueue7(TimeUnit units, long timeout){
+		this(0, units, timeout);
+	}
+	
+	/**
+	 * constructor with initial queue priorities
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param units
+	 * 				time units for timeout
+	 * @param timeout
+	 * 				time-out in given units for a pending operation
+	 */
+	public PriorityQueue7(int initialPriorites, TimeUnit units, long timeout){
+		heap = new IntHeap(initialPriorites);
+		for (int i=1; i<=initialPriorites; i++)
+			heap.insert(i);
+		
+		this.timeout = timeout;
+		this.units = units;
+	}
+	
+	/**
+	 * Inserts a new element by its priority
+	 * @param val
+	 * 			Value to be inserted to the priority queue
+	 * @throws TimeoutException
+	 * 			If the operation was still pending at the time-out
+	 */
+	public void insert(int val) throws TimeoutException{
+		apply(INSERT, val);
+	}
+	
+	/**
+	 * removes and returns the first element
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			The minimum value in the priority queue
+	 * @throws TimeoutException
+	 * 			If the operation was still pending at the time-out
+	 */
+	public int deleteMin() throws TimeoutException{
+		return apply(DELETE_MIN, 0);
+	}
+	
+	/**
+	 * publishes an operation and waits until it is done, combining while the combiner lock is free
+	 */
+	private int apply(int op, int val) throws TimeoutException{
+		Record record = myRecord.get();
+		record.op = op;
+		record.value = val;
+		record.state.set(PENDING);
+		
+		long deadline = System.nanoTime() + units.toNanos(timeout);
+		int spins = 0;
+		while (true){
+			if (!combinerLock.get() && combinerLock.compareAndSet(false, true)){
+				try{
+					combine();
+				} finally {
+					combinerLock.set(false);
+				}
+			}
+			if (record.state.get() == DONE) break;
+			if (System.nanoTime() - deadline >= 0 && record.state.compareAndSet(PENDING, IDLE))
+				throw new TimeoutException();
+			// still pending, or taken by a combiner right now
+			if (++spins < SPINS) Thread.onSpinWait();
+			else Thread.yield();
+		}
+		record.state.set(IDLE);
+		return record.result;
+	}
+	
+	/**
+	 * applies all pending operations to the heap, called holding the combiner lock
+	 */
+	private void combine(){
+		for (Record record = records.get(); record != null; record = record.next){
+			if (record.state.get() != PENDING || !record.state.compareAndSet(PENDING, TAKEN)) continue;
+			if (record.op == INSERT)
+				heap.insert(record.value);
+			else record.result = heap.isEmpty() ? -1 : heap.deleteMin();
+			record.state.set(DONE);
+		}
+	}
+	
+	public String toString(){
+		while (!combinerLock.compareAndSet(false, true))
+			Thread.yield();
+		try{
+			return heap.toString();
+		} finally {
+			combinerLock.set(false);
+		}
+	}
+	
+	/**
+	 * class for the publication record of a thread
+	 */
+	private static class Record{
+		private final AtomicInteger state = new AtomicInteger(IDLE);
+		private int op;
+		private int value;
+		private int result;
+		private Record next;
+	}
+}
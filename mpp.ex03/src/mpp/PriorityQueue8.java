@@ -0,0 +1,144 @@
+package mpp;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import mpp.Main.*;
+
+/**
+ * PriorityQueue2 with an elimination array in front of it
+ * An insert of a value not greater than the head of the queue offers the value in a free slot of the array
+ * and waits a short while for a deleteMin to take it. A deleteMin first looks in a random slot and takes
+ * an offered value without waiting, and then neither of them touches the list, in particular not
+ * the contended head. Otherwise both go to the queue.
+ * The head is compared without locking, so an insert of a smaller value into the queue may overlap
+ * an elimination.
+ */
+public class PriorityQueue8 extends PriorityQueue{
+	// slot states in the upper half of a slot, an offer carries its value in the lower half;
+	// only the insert that made an offer empties its slot again, after it was taken or withdrawn
+	private static final long EMPTY = 0, OFFER = 1L << 32, TAKEN = 2L << 32;
+	private static final long VALUE_MASK = (1L << 32)-1;
+	private static final int PAD = 16;		// longs per slot, a slot per cache line pair as in ShardedCounter
+	private static final int SPINS = 64;	// iterations to spin in a slot before yielding
+	private static final long DEFAULT_WAIT = 10000;	// time an insert waits in a slot (nanosecs)
+	
+	private PriorityQueue2 queue;
+	private AtomicLongArray slots;
+	private int numOfSlots;
+	private long waitNanos;
+	
+	// inserts that offered their value, and eliminations
+	private LongAdder attempts = new LongAdder();
+	private LongAdder eliminations = new LongAdder();
+	
+	/**
+	 * constructor with initial queue priorities, a slot per available processor
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the element locks of the queue
+	 */
+	public PriorityQueue8(int initialPriorites, TimeUnit units, long timeout){
+		this(initialPriorites, units, timeout, Runtime.getRuntime().availableProcessors(), DEFAULT_WAIT);
+	}
+	
+	/**
+	 * constructor with initial queue priorities and elimination parameters
+	 * @param initialPriorites
+	 * 				initial priorities bound to be inserted into the queue starting from 1
+	 * @param units
+	 * 				time units for timeout (down to TimeUnit.MICROSECONDS or TimeUnit.NANOSECONDS)
+	 * @param timeout
+	 * 				time-out in given units for the element locks of the queue
+	 * @param numOfSlots
+	 * 				size of the elimination array
+	 * @param waitNanos
+	 * 				time an insert waits in the elimination array for a deleteMin (nanosecs)
+	 */
+	public PriorityQueue8(int initialPriorites, TimeUnit units, long timeout, int numOfSlots, long waitNanos){
+		queue = new PriorityQueue2(initialPriorites, units, timeout);
+		this.numOfSlots = Math.max(1, numOfSlots);
+		this.waitNanos = waitNanos;
+		slots = new AtomicLongArray(this.numOfSlots*PAD);
+	}
+	
+	/**
+	 * Inserts a new element, offering it to a deleteMin first if it is not greater than the head
+	 * @param val
+	 * 				Value to be inserted to the priority queue
+	 * @throws TimeoutException
+	 * 				If an element lock of the queue had timed-out
+	 */
+	public void insert(int val) throws TimeoutException{
+		int min = queue.peekMin();
+		if ((min == -1 || val <= min) && offer(OFFER | (val & VALUE_MASK)))
+			return;
+		queue.insert(val);
+	}
+	
+	/**
+	 * removes and returns a value offered by an insert, or else the first element
+	 * if the queue is empty returns -1
+	 * @return
+	 * 			The minimum value in the priority queue
+	 * @throws TimeoutException
+	 * 			If the head-element lock of the queue had timed-out
+	 */
+	public int deleteMin() throws TimeoutException{
+		int slot = ThreadLocalRandom.current().nextInt(numOfSlots)*PAD;
+		long state = slots.get(slot);
+		if ((state & ~VALUE_MASK) == OFFER && slots.compareAndSet(slot, state, TAKEN))
+			return (int)(state & VALUE_MASK);
+		return queue.deleteMin();
+	}
+	
+	/**
+	 * offers a value in a free slot and waits for a deleteMin to take it, withdrawing it on time-out
+	 * @return	whether a deleteMin took the value
+	 */
+	private boolean offer(long offer){
+		attempts.increment();
+		int start = ThreadLocalRandom.current().nextInt(numOfSlots);
+		for (int i=0; i<numOfSlots; i++){
+			int slot = ((start+i) % numOfSlots)*PAD;
+			if (slots.get(slot) != EMPTY || !slots.compareAndSet(slot, EMPTY, offer))
+				continue;
+			long deadline = System.nanoTime() + waitNanos;
+			int spins = 0;
+			while (slots.get(slot) == offer && System.nanoTime() - deadline < 0){
+				if (++spins < SPINS) Thread.onSpinWait();
+				else Thread.yield();
+			}
+			// withdraw, unless a deleteMin took the value meanwhile
+			if (slots.compareAndSet(slot, offer, EMPTY))
+				return false;
+			slots.set(slot, EMPTY);
+			eliminations.increment();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return	the number of inserts that were not greater than the head and offered their value
+	 */
+	public long getAttempts(){
+		return attempts.sum();
+	}
+	
+	/**
+	 * @return	the number of inserts whose value a deleteMin took
+	 */
+	public long getEliminations(){
+		return eliminations.sum();
+	}
+	
+	public String toString(){
+		return queue.toString();
+	}
+}
@@ -2,23 +2,49 @@ package mpp;
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.*;
-//TODO add volotiles?
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  *	Implementation of the Time-Out Lock
+ *	Acquisition does not allocate in steady state: a thread keeps its node while nobody is queued
+ *	behind it, and otherwise hands its node over to its successor and goes on with a spare node -
+ *	the predecessor's node, recycled when the lock was passed on to it. A new node is allocated
+ *	only after a node had to be left behind on a time-out, or when there is no spare yet.
+ *	A waiter spins on its predecessor's node for a while and then parks, leaving itself in that node
+ *	to be unparked when the node is released or abandoned.
+ *	Contention statistics are recorded only if a TOLockStats is given (it may be shared by several locks);
+ *	the queue length is then counted by the lock itself, so that it is the length of this lock's queue.
  */
-public class TOLock {
+public class TOLock implements Lock {
 	
 	// static members
 	static QNode AVAILABLE = new QNode();
+	static final int SPINS = 1 << 6;				// iterations to spin before parking
+	static final long NO_TIMEOUT = Long.MAX_VALUE;
 	
 	// virtual members
 	AtomicReference<QNode> tail;
 	ThreadLocal<QNode> myNode;
+	final TOLockStats stats;
+	final AtomicInteger queueLength;				// threads holding or waiting for the lock (kept with stats only)
 	
 	/**
 	 * default constructor
 	 */
 	public TOLock() {
+		this(null);
+	}
+	
+	/**
+	 * constructor
+	 * @param stats
+	 * 				The statistics to record into, or null for none
+	 */
+	public TOLock(TOLockStats stats) {
+		this.stats = stats;
+		queueLength = (stats != null) ? new AtomicInteger(0) : null;
 		tail = new AtomicReference<QNode>(null);
 		myNode = new ThreadLocal<QNode>() {
 			protected QNode initialValue() {
@@ -32,48 +58,221 @@ public class TOLock {
 	 * @param time
 	 * 				The maximum time to wait for the lock to be attained
 	 * @param unit
-	 * 				The time units for the time parameter
+	 * 				The time units for the time parameter, kept to nanosecond precision
 	 * @return
 	 * 				If the lock is attained in the time frame given, returns true.
 	 * 				Otherwise returns false.
 	 * @throws InterruptedException
+	 * 				If interrupted while waiting (the lock is not attained)
 	 */
 	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-		long startTime = System.currentTimeMillis();
-		long patience = TimeUnit.MILLISECONDS.convert(time, unit);
-		QNode qnode = new QNode();
-		myNode.set(qnode);
+		return acquire(unit.toNanos(time), true);
+	}
+	
+	/**
+	 * waits for the lock with no time-out, not responding to interrupts
+	 */
+	public void lock() {
+		try {
+			acquire(NO_TIMEOUT, false);
+		} catch (InterruptedException ie) {
+			// not thrown when not interruptible
+		}
+	}
+	
+	/**
+	 * waits for the lock with no time-out
+	 * @throws InterruptedException
+	 * 				If interrupted while waiting (the lock is not attained)
+	 */
+	public void lockInterruptibly() throws InterruptedException {
+		acquire(NO_TIMEOUT, true);
+	}
+	
+	/**
+	 * attains the lock only if nobody holds or waits for it, by a single CAS on the empty tail,
+	 * so that no node is enqueued and then abandoned
+	 */
+	public boolean tryLock() {
+		long startTime = System.nanoTime();
+		QNode qnode = myNode.get();
+		qnode.pred = null;
+		boolean locked = tail.compareAndSet(null, qnode);
+		if (stats != null) {
+			TOLockStats.Recorder recorder = stats.recorder();
+			if (locked) {
+				recorder.enqueued(queueLength.incrementAndGet());
+				held(qnode, recorder, startTime);
+			} else recorder.timedOut(startTime);
+		}
+		return locked;
+	}
+	
+	/**
+	 * Time-Out Lock unlocking method
+	 */
+	public void unlock() {
+		QNode qnode = myNode.get();
+		if (stats != null && qnode.held) {
+			qnode.held = false;
+			queueLength.decrementAndGet();
+			stats.recorder().released(qnode.lockTime);
+		}
+		if (!tail.compareAndSet(qnode, null)) {
+			// my successor takes over my node
+			switchNode(qnode);
+			qnode.pred = AVAILABLE;
+			wakeWaiter(qnode);
+		}
+	}
+	
+	/**
+	 * @return	a new condition of this lock; await and signal must be called while holding the lock
+	 */
+	public Condition newCondition() {
+		return new LockCondition(this);
+	}
+	
+	/**
+	 * enqueues my node and waits for my predecessor to release the lock, abandoning my node
+	 * on time-out or interrupt
+	 * @param patience
+	 * 				The maximum time to wait (nanosecs), NO_TIMEOUT for none
+	 * @param interruptible
+	 * 				Whether to give up when interrupted, otherwise the interrupt is kept for later
+	 */
+	private boolean acquire(long patience, boolean interruptible) throws InterruptedException {
+		if (interruptible && Thread.interrupted())
+			throw new InterruptedException();
+		long startTime = System.nanoTime();
+		QNode qnode = myNode.get();
+		TOLockStats.Recorder recorder = (stats != null) ? stats.recorder() : null;
+		if (recorder != null)
+			recorder.enqueued(queueLength.incrementAndGet());
 		qnode.pred = null;
 		QNode myPred = tail.getAndSet(qnode);
-		if (myPred == null || myPred.pred == AVAILABLE) {
+		if (myPred == null) {
+			if (recorder != null)
+				held(qnode, recorder, startTime);
 			return true;
 		}
-		while (System.currentTimeMillis() - startTime < patience) {
+		boolean locked;
+		boolean interrupted = false;
+		int spins = 0;
+		while (true) {
 			QNode predPred = myPred.pred;
 			if (predPred == AVAILABLE) {
-				return true;
+				recycle(qnode, myPred);
+				if (recorder != null)
+					held(qnode, recorder, startTime);
+				locked = true;
+				break;
 			} else if (predPred != null) {
+				// my predecessor abandoned its node
+				if (recorder != null)
+					recorder.abandonedTraversed++;
 				myPred = predPred;
+				continue;
+			}
+			long remaining = patience - (System.nanoTime() - startTime);
+			if (remaining <= 0) {
+				if (recorder != null)
+					timedOut(recorder, startTime);
+				abandon(qnode, myPred);
+				locked = false;
+				break;
+			}
+			if (spins < SPINS) {
+				spins++;
+				Thread.onSpinWait();
+				continue;
+			}
+			// leave myself in the node to be woken up, and check it again before parking
+			myPred.waiter = Thread.currentThread();
+			if (myPred.pred == null)
+				LockSupport.parkNanos(this, remaining);
+			if (Thread.interrupted()) {
+				if (interruptible) {
+					if (recorder != null)
+						timedOut(recorder, startTime);
+					abandon(qnode, myPred);
+					throw new InterruptedException();
+				}
+				interrupted = true;
 			}
 		}
-		if (!tail.compareAndSet(qnode, myPred))
-			qnode.pred = myPred;
-		return false;
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		return locked;
 	}
 	
 	/**
-	 * Time-Out Lock unlocking method
+	 * records the acquisition and marks my node as holding the lock, for the hold time to be recorded on release
 	 */
-	public void unlock() {
-		QNode qnode = myNode.get();
-		if (!tail.compareAndSet(qnode, null))
-			qnode.pred = AVAILABLE;
+	private static void held(QNode qnode, TOLockStats.Recorder recorder, long startTime) {
+		qnode.lockTime = recorder.acquired(startTime);
+		qnode.held = true;
+	}
+	
+	/**
+	 * records a wait given up after my node was counted in the queue
+	 */
+	private void timedOut(TOLockStats.Recorder recorder, long startTime) {
+		queueLength.decrementAndGet();
+		recorder.timedOut(startTime);
+	}
+	
+	/**
+	 * takes my node out of the queue, or leaves it behind pointing to my predecessor for my successor to skip
+	 */
+	private void abandon(QNode qnode, QNode myPred) {
+		if (tail.compareAndSet(qnode, myPred))
+			return; // nobody saw my node, keep it
+		switchNode(qnode);
+		qnode.pred = myPred;
+		wakeWaiter(qnode);
+	}
+	
+	/**
+	 * unparks the thread waiting on my released or abandoned node, if any
+	 */
+	private static void wakeWaiter(QNode qnode) {
+		Thread waiter = qnode.waiter;
+		if (waiter != null)
+			LockSupport.unpark(waiter);
+	}
+
+	/**
+	 * keeps the node of my predecessor, who passed me the lock, as my spare node:
+	 * its owner moved on to another node and I was the only one spinning on it
+	 */
+	private void recycle(QNode qnode, QNode myPred) {
+		myPred.waiter = null;
+		if (qnode.spare == null)
+			qnode.spare = myPred;
+	}
+
+	/**
+	 * moves me from my current node, which others may still reference, to my spare node or to a new one
+	 * (must be called before the current node is published to others)
+	 */
+	private void switchNode(QNode qnode) {
+		QNode spare = qnode.spare;
+		qnode.spare = null;
+		myNode.set(spare != null ? spare : new QNode());
 	}
 
 	/**
 	 * Class QNode for holding the nodes for each thread with a pointer to the predecessor
 	 */
 	static class QNode {
-		public QNode pred = null;
+		public volatile QNode pred = null;
+		// the thread parked waiting for this node to be released or abandoned
+		volatile Thread waiter = null;
+		// a node its owner may switch to, accessed by the owner only
+		QNode spare = null;
+		// whether the owner holds the lock through this node, and since when (kept with stats only)
+		boolean held = false;
+		long lockTime;
 	}
 }
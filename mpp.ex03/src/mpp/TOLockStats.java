@@ -0,0 +1,213 @@
+package mpp;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Contention statistics of one or more TOLocks
+ * Every thread records into a recorder of its own, with no synchronization, and the recorders are merged on
+ * read, so the figures are exact when the locks are quiescent and approximate while they are in use.
+ * Wait and hold times are kept in histograms of power of 2 buckets: bucket i counts times below 2^i nanosecs.
+ * The queue length counts the threads holding or waiting for one lock, each lock counting its own queue;
+ * the maximum is over all the locks sharing the stats.
+ * Time-outs also count waits given up on an interrupt.
+ */
+public class TOLockStats implements TOLockStatsMBean {
+	// static members
+	static final int BUCKETS = 64;
+	
+	// virtual members
+	private CopyOnWriteArrayList<Recorder> recorders = new CopyOnWriteArrayList<Recorder>();
+	private ThreadLocal<Recorder> myRecorder;
+	
+	/**
+	 * default constructor
+	 */
+	public TOLockStats() {
+		myRecorder = new ThreadLocal<Recorder>() {
+			protected Recorder initialValue() {
+				Recorder recorder = new Recorder();
+				recorders.add(recorder);
+				return recorder;
+			}
+		};
+	}
+	
+	/**
+	 * @return	the recorder of the calling thread
+	 */
+	Recorder recorder() {
+		return myRecorder.get();
+	}
+	
+	/**
+	 * registers the stats as an MBean of the platform MBean server, under mpp:type=TOLockStats,name=<name>
+	 */
+	public void register(String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("mpp:type=TOLockStats,name="+name));
+		} catch (JMException e) {
+			throw new IllegalStateException("cannot register the TOLock stats as "+name, e);
+		}
+	}
+	
+	public long getAcquisitions() {
+		long sum = 0;
+		for (Recorder recorder: recorders)
+			sum += recorder.acquisitions;
+		return sum;
+	}
+	
+	public long getTimeouts() {
+		long sum = 0;
+		for (Recorder recorder: recorders)
+			sum += recorder.timeouts;
+		return sum;
+	}
+	
+	public double getTimeoutRate() {
+		long timeouts = getTimeouts();
+		long attempts = getAcquisitions() + timeouts;
+		return (attempts == 0) ? 0 : (double)timeouts/attempts;
+	}
+	
+	public long getAbandonedNodesTraversed() {
+		long sum = 0;
+		for (Recorder recorder: recorders)
+			sum += recorder.abandonedTraversed;
+		return sum;
+	}
+	
+	public int getMaxQueueLength() {
+		int max = 0;
+		for (Recorder recorder: recorders)
+			max = Math.max(max, recorder.maxQueueLength);
+		return max;
+	}
+	
+	public long getWaitNanosP50() {
+		return percentile(getWaitHistogram(), 0.5);
+	}
+	
+	public long getWaitNanosP99() {
+		return percentile(getWaitHistogram(), 0.99);
+	}
+	
+	public long getHoldNanosP50() {
+		return percentile(getHoldHistogram(), 0.5);
+	}
+	
+	public long getHoldNanosP99() {
+		return percentile(getHoldHistogram(), 0.99);
+	}
+	
+	/**
+	 * @return	the histogram of the waits for the lock, of acquisitions and time-outs alike
+	 */
+	public long[] getWaitHistogram() {
+		long[] histogram = new long[BUCKETS];
+		for (Recorder recorder: recorders)
+			for (int i=0; i<BUCKETS; i++)
+				histogram[i] += recorder.waits[i];
+		return histogram;
+	}
+	
+	/**
+	 * @return	the histogram of the times the lock was held
+	 */
+	public long[] getHoldHistogram() {
+		long[] histogram = new long[BUCKETS];
+		for (Recorder recorder: recorders)
+			for (int i=0; i<BUCKETS; i++)
+				histogram[i] += recorder.holds[i];
+		return histogram;
+	}
+	
+	/**
+	 * clears all figures (should be called when the locks are quiescent)
+	 */
+	public void reset() {
+		for (Recorder recorder: recorders)
+			recorder.clear();
+	}
+	
+	/**
+	 * @return	the upper bound of the bucket holding the given fraction of the histogram's entries
+	 */
+	static long percentile(long[] histogram, double fraction) {
+		long total = 0;
+		for (long count: histogram)
+			total += count;
+		if (total == 0) return 0;
+		long rank = (long)Math.ceil(fraction*total);
+		long seen = 0;
+		for (int i=0; i<BUCKETS; i++) {
+			seen += histogram[i];
+			if (seen >= rank)
+				return (i == BUCKETS-1) ? Long.MAX_VALUE : 1L << i;
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	static int bucket(long nanos) {
+		return Math.min(BUCKETS-1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+	}
+	
+	public String toString() {
+		return "acquisitions "+getAcquisitions()+", time-outs "+getTimeouts()+" ("+(getTimeoutRate()*100)+"%)"+
+				", abandoned nodes traversed "+getAbandonedNodesTraversed()+", max queue length "+getMaxQueueLength()+
+				", wait p50/p99 <"+getWaitNanosP50()+"/<"+getWaitNanosP99()+" nanosecs"+
+				", hold p50/p99 <"+getHoldNanosP50()+"/<"+getHoldNanosP99()+" nanosecs";
+	}
+	
+	/**
+	 * Class Recorder for the figures of one thread, written by that thread only
+	 */
+	class Recorder {
+		long acquisitions = 0;
+		long timeouts = 0;
+		long abandonedTraversed = 0;
+		int maxQueueLength = 0;
+		long[] waits = new long[BUCKETS];
+		long[] holds = new long[BUCKETS];
+		
+		/**
+		 * called on enqueuing, with the length of the lock's queue including me
+		 */
+		void enqueued(int length) {
+			if (length > maxQueueLength) maxQueueLength = length;
+		}
+		
+		/**
+		 * @return	the time the lock was attained, to be passed on to released
+		 */
+		long acquired(long startTime) {
+			long lockTime = System.nanoTime();
+			acquisitions++;
+			waits[bucket(lockTime - startTime)]++;
+			return lockTime;
+		}
+		
+		void timedOut(long startTime) {
+			timeouts++;
+			waits[bucket(System.nanoTime() - startTime)]++;
+		}
+		
+		void released(long lockTime) {
+			holds[bucket(System.nanoTime() - lockTime)]++;
+		}
+		
+		void clear() {
+			acquisitions = 0;
+			timeouts = 0;
+			abandonedTraversed = 0;
+			maxQueueLength = 0;
+			for (int i=0; i<BUCKETS; i++) {
+				waits[i] = 0;
+				holds[i] = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package mpp;
+
+/**
+ * Management interface of TOLockStats, wait and hold times are upper bounds of histogram buckets (nanosecs)
+ */
+public interface TOLockStatsMBean {
+	long getAcquisitions();
+	long getTimeouts();
+	double getTimeoutRate();
+	long getAbandonedNodesTraversed();
+	int getMaxQueueLength();
+	long getWaitNanosP50();
+	long getWaitNanosP99();
+	long getHoldNanosP50();
+	long getHoldNanosP99();
+	long[] getWaitHistogram();
+	long[] getHoldHistogram();
+	void reset();
+}
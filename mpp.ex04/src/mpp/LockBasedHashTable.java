@@ -21,6 +21,7 @@ public class LockBasedHashTable {
 	private AtomicInteger tableSize;
 	private AtomicInteger totalElements;
 	private AtomicBoolean isRehashingInProgress;
+	private WaitStrategy strategy = WaitStrategy.ADAPTIVE;
 	
 	/**
 	 * default constructor
@@ -123,7 +124,8 @@ public class LockBasedHashTable {
 		int lockIndex;
 		
 		// don't try to attain lock while rehashing is in progress
-		while (isRehashingInProgress.get()) {}
+		int waits = 0;
+		while (isRehashingInProgress.get()) waits = strategy.idle(waits);
 		
 		// try to attain the correct bucket's lock until succeeded
 		while (true){
@@ -131,7 +133,8 @@ public class LockBasedHashTable {
 			lockIndex = bucketIndex % numOfLocks;
 			// attain lock
 			//locks[lockIndex].lock();
-			while (!locks[lockIndex].compareAndSet(false, true)) {}
+			waits = 0;
+			while (!locks[lockIndex].compareAndSet(false, true)) waits = strategy.idle(waits);
 			// validate that the correct bucket was locked
 			// and that rehashing wasn't done in the meanwhile or try again
 			if (getBucketIndex(key,tableSize.get()) == bucketIndex && !isRehashingInProgress.get())
@@ -171,7 +174,8 @@ public class LockBasedHashTable {
 		//	lock.lock();
 		//}
 		for(int i=0; i<numOfLocks; i++){
-			while(!locks[i].compareAndSet(false, true)){}
+			int waits = 0;
+			while(!locks[i].compareAndSet(false, true)) waits = strategy.idle(waits);
 		}
 		
 		